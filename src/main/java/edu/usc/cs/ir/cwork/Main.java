@@ -2,13 +2,17 @@ package edu.usc.cs.ir.cwork;
 
 import edu.usc.cs.ir.cwork.es.EsIndexer;
 import edu.usc.cs.ir.cwork.files.DumpPoster;
+import edu.usc.cs.ir.cwork.graph.EdgeFile;
 import edu.usc.cs.ir.cwork.nutch.LastModifiedUpdater;
 import edu.usc.cs.ir.cwork.nutch.OutlinkUpdater;
 import edu.usc.cs.ir.cwork.relevance.GraphGenerator;
+import edu.usc.cs.ir.cwork.relevance.ParallelPageRanker;
 import edu.usc.cs.ir.cwork.relevance.SparkPageRanker;
+import edu.usc.cs.ir.cwork.solr.DeadLetters;
 import edu.usc.cs.ir.cwork.solr.Phase2Indexer;
 import edu.usc.cs.ir.cwork.solr.SolrIndexer;
 import edu.usc.cs.ir.cwork.solr.SolrPageRankUpdater;
+import edu.usc.cs.ir.cwork.solr.reprocess.Reprocessor;
 import edu.usc.cs.ir.cwork.tika.Parser;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -31,13 +35,17 @@ public class Main {
     private enum Cmd {
         index("Index nutch segments to solr", SolrIndexer.class),
         phase2parse("Pharses the text content for NER and updates index", Phase2Indexer.class),
+        reprocess("Runs enrichers on the documents of a solr and posts them to another solr", Reprocessor.class),
         graph("Builds a graph of documents, and writes the edges set to file ", GraphGenerator.class),
+        edges("Converts the edges file of graph between text and binary formats", EdgeFile.class),
         pagerank("Computes page rank for nodes in graph", SparkPageRanker.class),
+        rank("Computes page rank for nodes in graph, in memory with multiple threads", ParallelPageRanker.class),
         postdump("Parse the file dump  and post 'em to solr ", DumpPoster.class),
         outlinks("Parse the nutch segments for outlinks and posts 'em to solr", OutlinkUpdater.class),
         lastmodified("Retrieves last-modified HTTP header value from nutch segments and updates it to Solr", LastModifiedUpdater.class),
         cdrindex("Index Nutch Segments to CDR (Elastic Search)", EsIndexer.class),
         updaterank("Updates Page rank", SolrPageRankUpdater.class),
+        replay("Posts the documents in dead letters file to solr", DeadLetters.class),
         parsecheck("Checks the parser output (input a config and a file )",Parser.class);
 
         private final String description;
@@ -0,0 +1,350 @@
+package edu.usc.cs.ir.cwork.es;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import io.searchbox.client.JestClient;
+import io.searchbox.client.JestResult;
+import io.searchbox.core.Bulk;
+import io.searchbox.core.Index;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Submits documents to elastic search in bulk requests, without blocking the caller
+ * on the response. Up to a fixed number of bulk requests are in flight at a time;
+ * the caller is blocked only when all of them are busy.
+ * A batch is sent when it has enough documents or enough bytes, whichever comes first.
+ * The items which fail with a transient error (HTTP 429 and 5xx, or a failed request) are
+ * retried together in smaller bulks with backoff; the other rejected items are not retried.
+ * The rejected documents, and the documents still failing after all the retries, are written
+ * to the dead letters file when it is set, else they are only logged. Either way they are
+ * reported as done, so that a bad document doesn't hold the checkpoint for the rest of the job.
+ */
+public class BulkSubmitter implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BulkSubmitter.class);
+    public static final long BACKOFF_MILLIS = 1000;
+
+    private static class Doc {
+        private final String id;
+        private final String json;
+        private final long tag;
+
+        private Doc(String id, String json, long tag) {
+            this.id = id;
+            this.json = json;
+            this.tag = tag;
+        }
+    }
+
+    private final JestClient client;
+    private final String indexName;
+    private final String indexType;
+    private final int maxDocs;
+    private final long maxBytes;
+    private final int maxRetries;
+    private final Consumer<List<Long>> onComplete;
+    private final ExecutorService senders;
+    private final Semaphore inFlight;
+    private final int maxInFlight;
+    private File deadLetters;
+
+    private List<Doc> batch = new ArrayList<>();
+    private long batchBytes;
+
+    private final AtomicLong numPosted = new AtomicLong();
+    private final AtomicLong numRetried = new AtomicLong();
+    private final AtomicLong numFailed = new AtomicLong();
+
+    /**
+     * Creates a submitter
+     * @param client jest client, which should be multi threaded
+     * @param indexName index name
+     * @param indexType document type
+     * @param maxInFlight max number of bulk requests in flight
+     * @param maxDocs max number of documents in a bulk request
+     * @param maxBytes max size of documents in a bulk request
+     * @param maxRetries max number of retry rounds of the failed items of a bulk
+     * @param onComplete called with the tags of documents which are done : indexed, or
+     *                   rejected and written to dead letters (or logged, when there are no
+     *                   dead letters). Called from the sender threads
+     */
+    public BulkSubmitter(JestClient client, String indexName, String indexType,
+                         int maxInFlight, int maxDocs, long maxBytes, int maxRetries,
+                         Consumer<List<Long>> onComplete) {
+        this.client = client;
+        this.indexName = indexName;
+        this.indexType = indexType;
+        this.maxInFlight = maxInFlight;
+        this.maxDocs = maxDocs;
+        this.maxBytes = maxBytes;
+        this.maxRetries = maxRetries;
+        this.onComplete = onComplete;
+        this.inFlight = new Semaphore(maxInFlight);
+        this.senders = Executors.newFixedThreadPool(maxInFlight);
+    }
+
+    /**
+     * Sets the dead letters file for the rejected documents. The documents which can't be
+     * written to it are not reported as done
+     * @param deadLetters file to append the rejected documents to, null to only log them
+     */
+    public void setDeadLetters(File deadLetters) {
+        this.deadLetters = deadLetters;
+    }
+
+    /**
+     * Adds a document to the current batch, and submits the batch if it is full
+     * @param id document id
+     * @param json document
+     * @param tag tag to identify the document in completion callback
+     * @throws InterruptedException when interrupted while waiting for a free slot
+     */
+    public void add(String id, String json, long tag) throws InterruptedException {
+        batch.add(new Doc(id, json, tag));
+        batchBytes += json.length();
+        if (batch.size() >= maxDocs || batchBytes >= maxBytes) {
+            flush();
+        }
+    }
+
+    /**
+     * Submits the current batch
+     * @throws InterruptedException when interrupted while waiting for a free slot
+     */
+    public void flush() throws InterruptedException {
+        if (batch.isEmpty()) {
+            return;
+        }
+        List<Doc> docs = batch;
+        batch = new ArrayList<>();
+        batchBytes = 0;
+        inFlight.acquire();
+        try {
+            senders.submit(() -> {
+                try {
+                    send(docs);
+                } finally {
+                    inFlight.release();
+                }
+            });
+        } catch (RuntimeException e) {
+            inFlight.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Sends the documents in a bulk. The items which fail with a transient error are sent
+     * again together, in one bulk per round, after a backoff which doubles every round.
+     * @param docs the documents
+     */
+    private void send(List<Doc> docs) {
+        List<Long> done = new ArrayList<>(docs.size());
+        List<Doc> pending = docs;
+        for (int attempt = 0; !pending.isEmpty(); attempt++) {
+            List<Doc> retryable = new ArrayList<>();
+            sendBulk(pending, done, retryable);
+            if (retryable.isEmpty()) {
+                break;
+            }
+            if (attempt >= maxRetries) {
+                LOG.error("Gave up on {} documents after {} retries", retryable.size(), maxRetries);
+                reject(retryable, Collections.nCopies(retryable.size(),
+                        "Failed after " + maxRetries + " retries"), done);
+                break;
+            }
+            LOG.warn("{} of {} documents failed in bulk, retry {} of them in a bulk",
+                    retryable.size(), pending.size(), attempt + 1);
+            try {
+                Thread.sleep(BACKOFF_MILLIS << attempt);
+            } catch (InterruptedException e) {
+                // stopping, these are neither indexed nor rejected
+                Thread.currentThread().interrupt();
+                numFailed.addAndGet(retryable.size());
+                break;
+            }
+            numRetried.addAndGet(retryable.size());
+            pending = retryable;
+        }
+        onComplete.accept(done);
+    }
+
+    /**
+     * Sends a bulk request
+     * @param docs documents to send
+     * @param done collects the tags of indexed documents, and of the rejected documents
+     *             which are written to dead letters
+     * @param retryable collects the documents which failed with a transient error
+     */
+    private void sendBulk(List<Doc> docs, List<Long> done, List<Doc> retryable) {
+        try {
+            List<Index> actions = new ArrayList<>(docs.size());
+            for (Doc doc : docs) {
+                actions.add(new Index.Builder(doc.json).id(doc.id).build());
+            }
+            Bulk bulk = new Bulk.Builder()
+                    .defaultIndex(indexName)
+                    .defaultType(indexType)
+                    .addAction(actions)
+                    .build();
+            JestResult result = client.execute(bulk);
+            JsonArray items = result.getJsonObject() == null ? null
+                    : result.getJsonObject().getAsJsonArray("items");
+            if (items == null || items.size() != docs.size()) {
+                int status = result.getResponseCode();
+                LOG.error("Failure in bulk commit, status {} : {}", status, result.getErrorMessage());
+                if (isTransient(status)) {
+                    retryable.addAll(docs);
+                } else {
+                    // such as a bulk too large, the same request fails again
+                    reject(docs, Collections.nCopies(docs.size(),
+                            "Bulk failed, status " + status + " : " + result.getErrorMessage()), done);
+                }
+                return;
+            }
+            List<Doc> rejected = new ArrayList<>();
+            List<String> errors = new ArrayList<>();
+            for (int i = 0; i < docs.size(); i++) {
+                Doc doc = docs.get(i);
+                int status = getStatus(items.get(i));
+                if (status < 300) {
+                    done.add(doc.tag);
+                    numPosted.incrementAndGet();
+                } else if (isTransient(status)) {
+                    retryable.add(doc);
+                } else {
+                    // such as mapping errors, the same document fails again
+                    LOG.error("Rejected {} : {}", doc.id, items.get(i));
+                    rejected.add(doc);
+                    errors.add(items.get(i).toString());
+                }
+            }
+            if (!rejected.isEmpty()) {
+                reject(rejected, errors, done);
+            }
+        } catch (Exception e) {
+            LOG.error("Failure in bulk commit: {}", e.getMessage());
+            retryable.addAll(docs);
+        }
+    }
+
+    private static boolean isTransient(int status) {
+        return status == 429 || status >= 500;
+    }
+
+    /**
+     * Takes the documents as failed for good : writes them to dead letters when set, and
+     * reports them as done unless they couldn't be written
+     * @param docs the failed documents
+     * @param errors the reason of failure of each document
+     * @param done collects the tags of documents which are done
+     */
+    private void reject(List<Doc> docs, List<String> errors, List<Long> done) {
+        numFailed.addAndGet(docs.size());
+        if (deadLetters == null || writeDeadLetters(docs, errors)) {
+            for (Doc doc : docs) {
+                done.add(doc.tag);
+            }
+        }
+    }
+
+    /**
+     * Appends the documents to dead letters file, one JSON line per document having
+     * its id, error and the document
+     * @param docs the documents
+     * @param errors the reason for rejection of each document
+     * @return true when the documents are durably written
+     */
+    private synchronized boolean writeDeadLetters(List<Doc> docs, List<String> errors) {
+        try (FileOutputStream stream = new FileOutputStream(deadLetters, true)) {
+            Writer writer = new OutputStreamWriter(stream, StandardCharsets.UTF_8);
+            JsonParser parser = new JsonParser();
+            for (int i = 0; i < docs.size(); i++) {
+                Doc doc = docs.get(i);
+                JsonObject letter = new JsonObject();
+                letter.addProperty("id", doc.id);
+                letter.addProperty("error", errors.get(i));
+                letter.add("doc", parser.parse(doc.json));
+                writer.write(letter.toString());
+                writer.write("\n");
+            }
+            writer.flush();
+            // the records of these docs are acknowledged as done after this
+            stream.getFD().sync();
+            return true;
+        } catch (IOException | RuntimeException e) {
+            LOG.error("Couldn't write {} dead letters to {} : {}", docs.size(), deadLetters, e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Gets the status of a bulk item
+     * @param item item of bulk response, like {"index": {"_id": .., "status": .., "error": ..}}
+     * @return HTTP status of the item; 500 when it has an error but no status
+     */
+    private static int getStatus(JsonElement item) {
+        for (Map.Entry<String, JsonElement> entry : item.getAsJsonObject().entrySet()) {
+            JsonObject result = entry.getValue().getAsJsonObject();
+            if (result.has("status")) {
+                return result.get("status").getAsInt();
+            }
+            if (result.has("error")) {
+                return 500;
+            }
+        }
+        return 200;
+    }
+
+    public long getNumPosted() {
+        return numPosted.get();
+    }
+
+    public long getNumRetried() {
+        return numRetried.get();
+    }
+
+    public long getNumFailed() {
+        return numFailed.get();
+    }
+
+    public int getNumInFlight() {
+        return maxInFlight - inFlight.availablePermits();
+    }
+
+    /**
+     * Submits the last batch and waits for all the requests to complete
+     */
+    @Override
+    public void close() {
+        try {
+            flush();
+            senders.shutdown();
+            senders.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            senders.shutdownNow();
+        }
+    }
+}
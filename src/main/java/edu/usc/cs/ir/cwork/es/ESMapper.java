@@ -1,9 +1,13 @@
 package edu.usc.cs.ir.cwork.es;
 
+import com.google.gson.stream.JsonWriter;
 import edu.usc.cs.ir.cwork.solr.ContentBean;
 import org.json.JSONObject;
 
-import java.util.LinkedHashMap;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.reflect.Array;
+import java.util.Collection;
 import java.util.Map;
 
 /**
@@ -11,6 +15,17 @@ import java.util.Map;
  */
 public class ESMapper  {
 
+    public static final String CRAWLER = "Nutch-1.12-SNAPSHOT";
+    public static final String TEAM = "NASA_JPL";
+    public static final float VERSION = 2.0f;
+
+    //FIXME : make this replacement configurable
+    private static String getStoredUrl(String id) {
+        return id.replace(
+                "file:/data2/USCWeaponsStatsGathering/nutch/full_dump/",
+                "http://imagecat.dyndns.org/weapons/alldata/");
+    }
+
     public static JSONObject toCDRSchema(ContentBean contentBean) {
         JSONObject doc = new JSONObject();
 
@@ -32,28 +47,92 @@ public class ESMapper  {
 
         doc.put("content_type", contentBean.getContentType());
         //doc.add("crawl_data", extractedData);
-        doc.put("crawler", "Nutch-1.12-SNAPSHOT");
+        doc.put("crawler", CRAWLER);
 
         JSONObject extractedMd = new JSONObject(contentBean.getMetadata());
         doc.put("extracted_metadata", extractedMd);
         doc.put("extracted_text", contentBean.getContent());
         doc.put("obj_original_url", contentBean.getUrl());
 
-        //FIXME : make this replacement configurable
-        String storedUrl = id.replace(
-                "file:/data2/USCWeaponsStatsGathering/nutch/full_dump/",
-                "http://imagecat.dyndns.org/weapons/alldata/");
-        doc.put("obj_stored_url", storedUrl);
+        doc.put("obj_stored_url", getStoredUrl(id));
 
-        doc.put("team", "NASA_JPL");
+        doc.put("team", TEAM);
         //FIXME: The below info not available
         // doc.add("timestamp", datum.getFetchTime());
         doc.put("url", contentBean.getUrl());
-        doc.put("version", (float)2.0);
+        doc.put("version", VERSION);
         doc.put("parsed_at", System.currentTimeMillis());
 
         doc.put("raw_content", contentBean.getRawContent());
         return doc;
     }
 
+    /**
+     * Writes the document in CDR schema as JSON, field by field, without building an object
+     * tree of it. The fields are same as {@link #toCDRSchema(ContentBean)} except obj_id,
+     * which goes in the bulk action instead of the document. Null fields are skipped.
+     * @param contentBean the document
+     * @param out the writer, such as a reused buffer of bulk request
+     * @throws IOException when the writer fails
+     */
+    public static void writeCDRSchema(ContentBean contentBean, Writer out) throws IOException {
+        JsonWriter json = new JsonWriter(out);
+        json.setSerializeNulls(false);
+        json.beginObject();
+        writeValue(json.name("obj_outlinks"), contentBean.getOutpaths());
+        writeValue(json.name("obj_outurls"), contentBean.getOutlinks());
+        json.name("content_type").value(contentBean.getContentType());
+        json.name("crawler").value(CRAWLER);
+        json.name("extracted_metadata");
+        if (contentBean.getMetadata() == null) {
+            json.beginObject().endObject();
+        } else {
+            writeValue(json, contentBean.getMetadata());
+        }
+        json.name("extracted_text").value(contentBean.getContent());
+        json.name("obj_original_url").value(contentBean.getUrl());
+        if (contentBean.getId() != null) {
+            json.name("obj_stored_url").value(getStoredUrl(contentBean.getId()));
+        }
+        json.name("team").value(TEAM);
+        json.name("url").value(contentBean.getUrl());
+        json.name("version").value(VERSION);
+        json.name("parsed_at").value(System.currentTimeMillis());
+        json.name("raw_content").value(contentBean.getRawContent());
+        json.endObject();
+        json.flush();
+    }
+
+    private static void writeValue(JsonWriter json, Object value) throws IOException {
+        if (value == null) {
+            json.nullValue();
+        } else if (value instanceof String) {
+            json.value((String) value);
+        } else if (value instanceof Number) {
+            json.value((Number) value);
+        } else if (value instanceof Boolean) {
+            json.value((Boolean) value);
+        } else if (value instanceof Collection) {
+            json.beginArray();
+            for (Object item : (Collection<?>) value) {
+                writeValue(json, item);
+            }
+            json.endArray();
+        } else if (value.getClass().isArray()) {
+            json.beginArray();
+            int length = Array.getLength(value);
+            for (int i = 0; i < length; i++) {
+                writeValue(json, Array.get(value, i));
+            }
+            json.endArray();
+        } else if (value instanceof Map) {
+            json.beginObject();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                writeValue(json.name(String.valueOf(entry.getKey())), entry.getValue());
+            }
+            json.endObject();
+        } else {
+            json.value(value.toString());
+        }
+    }
 }
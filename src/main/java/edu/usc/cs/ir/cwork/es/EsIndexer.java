@@ -1,5 +1,7 @@
 package edu.usc.cs.ir.cwork.es;
 
+import edu.usc.cs.ir.cwork.nutch.AckTracker;
+import edu.usc.cs.ir.cwork.nutch.Checkpoint;
 import edu.usc.cs.ir.cwork.nutch.NutchDumpPathBuilder;
 import edu.usc.cs.ir.cwork.nutch.RecordIterator;
 import edu.usc.cs.ir.cwork.nutch.SegContentReader;
@@ -7,15 +9,12 @@ import edu.usc.cs.ir.cwork.solr.ContentBean;
 import edu.usc.cs.ir.cwork.tika.Parser;
 import io.searchbox.client.JestClient;
 import io.searchbox.client.JestClientFactory;
-import io.searchbox.client.JestResult;
 import io.searchbox.client.config.HttpClientConfig;
-import io.searchbox.core.Bulk;
-import io.searchbox.core.Index;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.StringBuilderWriter;
 import org.apache.commons.math3.util.Pair;
 import org.apache.nutch.protocol.Content;
 import org.apache.solr.client.solrj.SolrServerException;
-import org.json.JSONObject;
 import org.kohsuke.args4j.CmdLineException;
 import org.kohsuke.args4j.CmdLineParser;
 import org.kohsuke.args4j.Option;
@@ -26,7 +25,7 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.net.URL;
-import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Properties;
 import java.util.concurrent.TimeUnit;
@@ -59,6 +58,25 @@ public class EsIndexer {
     @Option(name= "-cdrcreds", usage = "CDR credentials properties file.", required = true)
     private File cdrCredsFile;
 
+    @Option(name = "-checkpoint", usage = "Checkpoint file for resuming the job. Created when missing")
+    private File checkpointFile;
+
+    @Option(name = "-readers", usage = "Number of segment parts to read concurrently")
+    private int numReaders = 1;
+
+    @Option(name = "-inflight", usage = "Number of bulk requests in flight")
+    private int numInFlight = 2;
+
+    @Option(name = "-batchmb", usage = "Max size of a bulk request in megabytes")
+    private int batchMegaBytes = 10;
+
+    @Option(name = "-retries", usage = "Number of retry rounds of the documents which failed in a bulk")
+    private int numRetries = 3;
+
+    @Option(name = "-deadletters", usage = "File to append the documents rejected by elastic search to."
+            + " When missing, they are only logged")
+    private File deadLettersFile;
+
     private CDRCreds creds;
     private Function<URL, String> pathMapper;
 
@@ -107,7 +125,9 @@ public class EsIndexer {
             IOUtils.closeQuietly(stream);
             LOG.info("Found {} lines in {}", paths.size(), segsFile.getAbsolutePath());
             SegContentReader reader = new SegContentReader(paths);
-            RecordIterator recs = reader.read();
+            reader.setNumReaders(numReaders);
+            Checkpoint checkpoint = checkpointFile == null ? null : Checkpoint.load(checkpointFile);
+            RecordIterator recs = reader.read(checkpoint);
 
             //Step 4: elastic client
             index(recs, client);
@@ -138,64 +158,54 @@ public class EsIndexer {
         long count = 0;
         long delay = 2 * 1000;
         Parser parser = Parser.getInstance();
-        List<JSONObject> buffer = new ArrayList<>(batchSize);
-        while (recs.hasNext()) {
-            Pair<String, Content> rec = recs.next();
-            Content content = rec.getValue();
-            ContentBean bean = new ContentBean();
-            try {
-                parser.loadMetadataBean(content, pathMapper, bean);
-                buffer.add(ESMapper.toCDRSchema(bean));
-                count++;
-                if (buffer.size() >= batchSize) {
-                    try {
-                        indexAll(buffer, elastic);
-                        buffer.clear();
-                    } catch (Exception e) {
-                        throw new RuntimeException(e);
+        AckTracker tracker = new AckTracker(recs);
+        BulkSubmitter submitter = new BulkSubmitter(elastic, creds.indexName, creds.indexType,
+                numInFlight, batchSize, batchMegaBytes * 1024L * 1024L, numRetries, tracker::ack);
+        submitter.setDeadLetters(deadLettersFile);
+        // reused for serializing the documents, grows to the largest document
+        StringBuilderWriter buffer = new StringBuilderWriter(64 * 1024);
+        try {
+            while (recs.hasNext()) {
+                Checkpoint.Mark mark = recs.getMark();
+                Pair<String, Content> rec = recs.next();
+                long seq = tracker.track(mark);
+                Content content = rec.getValue();
+                ContentBean bean = new ContentBean();
+                try {
+                    parser.loadMetadataBean(content, pathMapper, bean);
+                    String id = bean.getId();
+                    if (id == null) {
+                        LOG.warn("No ID set to document. Skipped");
+                        tracker.ack(Collections.singletonList(seq));
+                        continue;
                     }
+                    buffer.getBuilder().setLength(0);
+                    ESMapper.writeCDRSchema(bean, buffer);
+                    submitter.add(id, buffer.toString(), seq);
+                    count++;
+                    if (System.currentTimeMillis() - st > delay) {
+                        LOG.info("Num Docs : {}, Posted : {}, Retried : {}, Failed : {}, In flight : {}",
+                                count, submitter.getNumPosted(), submitter.getNumRetried(),
+                                submitter.getNumFailed(), submitter.getNumInFlight());
+                        st = System.currentTimeMillis();
+                    }
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                } catch (Exception e){
+                    LOG.error("Error processing {}", content.getUrl());
+                    LOG.error(e.getMessage(), e);
+                    tracker.ack(Collections.singletonList(seq));
                 }
-                if (System.currentTimeMillis() - st > delay) {
-                    LOG.info("Num Docs : {}", count);
-                    st = System.currentTimeMillis();
-                }
-            } catch (Exception e){
-                LOG.error("Error processing {}", content.getUrl());
-                LOG.error(e.getMessage(), e);
             }
+        } finally {
+            //left out
+            submitter.close();
+            tracker.flush();
         }
-
-        //left out
-        if (!buffer.isEmpty()) {
-            indexAll(buffer, elastic);
-            buffer.clear();
-        }
-        LOG.info("Num Docs = {}", count);
+        LOG.info("Num Docs = {}, Posted = {}, Retried = {}, Failed = {}", count,
+                submitter.getNumPosted(), submitter.getNumRetried(), submitter.getNumFailed());
     }
 
-    private void indexAll(List<JSONObject> docs, JestClient client) throws IOException {
-
-        List<Index> inputDocs = new ArrayList<>();
-        for (JSONObject doc : docs) {
-            String id = (String) doc.remove("obj_id");
-            if (id == null) {
-                LOG.warn("No ID set to document. Skipped");
-                continue;
-            }
-            inputDocs.add(new Index.Builder(doc.toString()).id(id).build());
-        }
-        Bulk bulk = new Bulk.Builder()
-                .defaultIndex(creds.indexName)
-                .defaultType(creds.indexType)
-                .addAction(inputDocs)
-                .build();
-        JestResult result = client.execute(bulk);
-        if (!result.isSucceeded()){
-            LOG.error("Failure in bulk commit: {}", result.getErrorMessage());
-        }
-    }
-
-
     public static void main(String[] args) throws InterruptedException,
             SolrServerException, IOException {
         EsIndexer indexer = new EsIndexer();
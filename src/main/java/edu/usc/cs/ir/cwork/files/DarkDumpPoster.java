@@ -3,9 +3,9 @@ package edu.usc.cs.ir.cwork.files;
 import com.google.common.base.Function;
 import com.google.common.collect.Iterators;
 import edu.usc.cs.ir.cwork.nutch.OutlinkUpdater;
+import edu.usc.cs.ir.cwork.solr.BatchPoster;
 import edu.usc.cs.ir.cwork.solr.ContentBean;
 import edu.usc.cs.ir.cwork.tika.Parser;
-import edu.usc.cs.ir.cwork.util.GroupedIterator;
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVParser;
 import org.apache.commons.csv.CSVRecord;
@@ -19,9 +19,9 @@ import org.apache.nutch.parse.ParseUtil;
 import org.apache.nutch.protocol.Content;
 import org.apache.nutch.util.NutchConfiguration;
 import org.apache.solr.client.solrj.SolrServer;
+import org.apache.solr.client.solrj.SolrServerException;
 import org.apache.solr.client.solrj.impl.HttpSolrServer;
 import org.apache.solr.client.solrj.response.UpdateResponse;
-import org.apache.solr.common.SolrException;
 import org.apache.solr.common.SolrInputDocument;
 import org.kohsuke.args4j.CmdLineException;
 import org.kohsuke.args4j.CmdLineParser;
@@ -36,17 +36,11 @@ import java.io.IOException;
 import java.net.URL;
 import java.net.URLClassLoader;
 import java.nio.file.Files;
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
-import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
 
 /**
  * Created by tg on 12/11/15.
@@ -194,91 +188,19 @@ public class DarkDumpPoster extends DumpPoster {
 
     @Override
     public void run() {
-        long st = System.currentTimeMillis();
-        long count = 0;
-        long delay = 2 * 1000;
-
         Iterator<LinkRecord> records = getRecords();
-        GroupedIterator<LinkRecord> groupedDocs = new GroupedIterator<>(records, nThreads);
-        List<Future<ContentBean>> futures = new ArrayList<>(nThreads);
-        List<ContentBean> buffer = new ArrayList<>();
+        // throws when docs are lost, which stops the job
+        BatchPoster poster = BatchPoster.create(solr, batchSize, null);
         Parser parser = Parser.getInstance();
-        while (groupedDocs.hasNext()) {
-            try {
-                List<LinkRecord> group = groupedDocs.next();
-                futures.clear();
-                for (LinkRecord doc : group) {
-                    LinkRecParseTask task = new LinkRecParseTask(doc, parser);
-                    Future<ContentBean> future = getExecutors().submit(task);
-                    futures.add(future);
-                    count++;
-                }
-
-                // collect results
-                for (Future<ContentBean> future : futures) {
-                    try {
-                        ContentBean result = future.get(threadTimeout, TimeUnit.MILLISECONDS);
-                        if (result != null) {
-                            buffer.add(result);
-                        }
-                    } catch (InterruptedException | ExecutionException e) {
-                        LOG.error(e.getMessage(), e);
-                    } catch (TimeoutException e) {
-                        // didnt finish
-                        future.cancel(true);
-                        LOG.warn("Cancelled a parse task, it didnt complete in time");
-                    }
-                }
-
-                if (buffer.size() >= batchSize) {
-                    solr.addBeans(buffer);
-                    buffer.clear();
-                }
-
-                if (System.currentTimeMillis() - st > delay) {
-                    String lastPath = group.isEmpty() ? "EMPTY" : group.get(group.size() - 1).path;
-                    LOG.info("Num Docs : {}, Last file: {}", count, lastPath);
-                    st = System.currentTimeMillis();
-                }
-            } catch (SolrException e) {
-                LOG.error(e.getMessage(), e);
-                try {
-                    LOG.warn("Going to sleep for sometime");
-                    Thread.sleep(10000);
-                } catch (InterruptedException e1) {
-                    e1.printStackTrace();
-                }
-                LOG.warn("Woke Up! Going to add docs one by one");
-                int errCount = 0;
-                for (ContentBean bean : buffer) {
-                    try {
-                        solr.addBean(bean);
-                    } catch (Exception e1) {
-                        errCount++;
-                        e1.printStackTrace();
-                    }
-                }
-                LOG.info("Clearing the buffer. Errors :{}", errCount);
-                //possibly an error in documents
-                buffer.clear();
-            } catch (Exception e){
-                LOG.error(e.getMessage(), e);
-                try {
-                    Thread.sleep(4000);
-                } catch (InterruptedException e1) {
-                    e1.printStackTrace();
-                }
-            }
-        }
         try {
+            long count = parseAndPost(records, rec -> new LinkRecParseTask(rec, parser),
+                    rec -> rec.path, poster);
             //left out
-            if (!buffer.isEmpty()) {
-                solr.addBeans(buffer);
-            }
-            LOG.info("Committing before exit. Num Docs = {}", count);
+            poster.close();
+            LOG.info("Committing before exit. Num Docs = {}, Failed = {}", count, poster.getNumFailed());
             UpdateResponse response = solr.commit();
             LOG.info("Commit response : {}", response);
-        } catch (Exception e) {
+        } catch (SolrServerException | IOException e) {
             e.printStackTrace();
         } finally {
             if (service != null) {
@@ -1,34 +1,36 @@
 package edu.usc.cs.ir.cwork.files;
 
+import edu.usc.cs.ir.cwork.solr.BatchPoster;
 import edu.usc.cs.ir.cwork.solr.ContentBean;
 import edu.usc.cs.ir.cwork.tika.Parser;
-import edu.usc.cs.ir.cwork.util.FileIterator;
-import edu.usc.cs.ir.cwork.util.GroupedIterator;
+import edu.usc.cs.ir.cwork.util.ParallelFileWalker;
+import edu.usc.cs.ir.cwork.util.Watchdog;
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.LineIterator;
 import org.apache.solr.client.solrj.SolrServerException;
 import org.apache.solr.client.solrj.impl.HttpSolrServer;
 import org.apache.solr.client.solrj.response.UpdateResponse;
-import org.apache.solr.common.SolrException;
 import org.kohsuke.args4j.CmdLineException;
 import org.kohsuke.args4j.CmdLineParser;
 import org.kohsuke.args4j.Option;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
 import java.net.URL;
-import java.util.ArrayList;
 import java.util.Iterator;
-import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
 
 /**
  * Created by tg on 12/11/15.
@@ -36,6 +38,7 @@ import java.util.concurrent.TimeoutException;
 public class DumpPoster implements Runnable {
 
     public static final Logger LOG = LoggerFactory.getLogger(DumpPoster.class);
+    public static final int WINDOW_PER_THREAD = 4;
 
     @Option(name = "-in", usage = "Path to Files that are to be parsed and indexed", forbids = "-list")
     protected File file;
@@ -56,6 +59,13 @@ public class DumpPoster implements Runnable {
     @Option(name = "-batch", usage = "Batch size for buffering solr postings")
     protected int batchSize = 500;
 
+    @Option(name = "-walkers", usage = "Number of threads listing the directories of -in")
+    protected int nWalkers = 4;
+
+    @Option(name = "-manifest", usage = "File having the list of files of -in. It is created after"
+            + " listing the directories, and read in the next runs instead of listing again")
+    protected File manifest;
+
     protected ExecutorService service;
 
     /**
@@ -81,7 +91,7 @@ public class DumpPoster implements Runnable {
 
     public synchronized ExecutorService getExecutors(){
         if (service == null) {
-            this.service = Executors.newFixedThreadPool(nThreads);
+            this.service = Executors.newWorkStealingPool(nThreads);
         }
         return service;
     }
@@ -90,101 +100,129 @@ public class DumpPoster implements Runnable {
     public void run() {
 
         Iterator<File> files = getInputFiles();
-        long st = System.currentTimeMillis();
-        long count = 0;
-        long delay = 2 * 1000;
-
         HttpSolrServer destSolr = new HttpSolrServer(this.solrUrl.toString());
         destSolr.setConnectionTimeout(5*1000);
 
-        GroupedIterator<File> groupedDocs = new GroupedIterator<>(files, nThreads);
-        List<Future<ContentBean>> futures = new ArrayList<>(nThreads);
-        List<ContentBean> buffer = new ArrayList<>();
+        // throws when docs are lost, which stops the job
+        BatchPoster poster = BatchPoster.create(destSolr, batchSize, null);
         Parser parser = Parser.getInstance();
-        while (groupedDocs.hasNext()) {
-            try {
-                List<File> group = groupedDocs.next();
-                futures.clear();
-                for (File doc : group) {
-                    ParseTask task = new ParseTask(doc, parser);
-                    Future<ContentBean> future = getExecutors().submit(task);
-                    futures.add(future);
-                    count++;
-                }
+        try {
+            long count = parseAndPost(files, doc -> new ParseTask(doc, parser), File::getPath, poster);
+            //left out
+            poster.close();
+            LOG.info("Committing before exit. Num Docs = {}, Failed = {}", count, poster.getNumFailed());
+            UpdateResponse response = destSolr.commit();
+            LOG.info("Commit response : {}", response);
+        } catch (SolrServerException | IOException e) {
+            e.printStackTrace();
+        } finally {
+            if (files instanceof Closeable) {
+                IOUtils.closeQuietly((Closeable) files);
+            }
+            if (service != null) {
+                System.out.println("Shutting down the thread pool");
+                service.shutdown();
+            }
+        }
+    }
 
-                // collect results
-                for (Future<ContentBean> future : futures) {
+    /**
+     * Parses the inputs in the thread pool and posts the results as they complete.
+     * The pool is kept busy with up to {@link #WINDOW_PER_THREAD} tasks per thread, so a slow
+     * input holds up only its own thread. A task which runs longer than the timeout is
+     * interrupted by the watchdog and its result is dropped.
+     * When the poster loses docs, its {@link IllegalStateException} is thrown from here.
+     * @param inputs the inputs to be parsed
+     * @param tasks creates the parse task of an input
+     * @param paths path of an input, for logging the progress
+     * @param poster poster of the results
+     * @param <T> type of input
+     * @return number of inputs
+     */
+    protected <T> long parseAndPost(Iterator<T> inputs,
+                                    Function<T, Callable<ContentBean>> tasks,
+                                    Function<T, String> paths,
+                                    BatchPoster poster) {
+        long st = System.currentTimeMillis();
+        long count = 0;
+        long delay = 2 * 1000;
+        int window = nThreads * WINDOW_PER_THREAD;
+        int inFlight = 0;
+        String lastPath = "EMPTY";
+
+        CompletionService<ContentBean> completions = new ExecutorCompletionService<>(getExecutors());
+        try (Watchdog watchdog = new Watchdog()) {
+            while (inputs.hasNext() || inFlight > 0) {
+                try {
+                    while (inFlight < window && inputs.hasNext()) {
+                        T input = inputs.next();
+                        Callable<ContentBean> task = tasks.apply(input);
+                        completions.submit(() -> callWithTimeout(task, watchdog));
+                        inFlight++;
+                        count++;
+                        lastPath = paths.apply(input);
+                    }
+
+                    Future<ContentBean> future = completions.take();
+                    inFlight--;
                     try {
-                        ContentBean result = future.get(threadTimeout, TimeUnit.MILLISECONDS);
+                        ContentBean result = future.get();
                         if (result != null) {
-                            buffer.add(result);
+                            poster.addBean(result);
                         }
-                    } catch (InterruptedException e) {
-                        LOG.error(e.getMessage());
                     } catch (ExecutionException e) {
-                        LOG.error(e.getMessage(), e);
-                    } catch (TimeoutException e) {
-                        // didnt finish
-                        future.cancel(true);
-                        LOG.warn("Cancelled a parse task, it didnt complete in time");
+                        if (e.getCause() instanceof TimeoutException) {
+                            LOG.warn("Cancelled a parse task, it didnt complete in time");
+                        } else {
+                            LOG.error(e.getMessage(), e);
+                        }
                     }
-                }
 
-                if (buffer.size() >= batchSize) {
-                    destSolr.addBeans(buffer);
-                    buffer.clear();
-                }
-
-                if (System.currentTimeMillis() - st > delay) {
-                    String lastPath = group.isEmpty() ? "EMPTY" : group.get(group.size() - 1).getPath();
-                    LOG.info("Num Docs : {}, Last file: {}", count, lastPath);
-                    st = System.currentTimeMillis();
-                }
-            } catch (SolrException e) {
-                LOG.error(e.getMessage(), e);
-                try {
-                    LOG.warn("Going to sleep for sometime");
-                    Thread.sleep(10000);
-                } catch (InterruptedException e1) {
-                    e1.printStackTrace();
-                }
-                LOG.warn("Woke Up! Going to add docs one by one");
-                int errCount = 0;
-                for (ContentBean bean : buffer) {
+                    if (System.currentTimeMillis() - st > delay) {
+                        LOG.info("Num Docs : {}, In flight : {}, Timeouts : {}, Last file: {}",
+                                count, inFlight, watchdog.getNumTimeouts(), lastPath);
+                        st = System.currentTimeMillis();
+                    }
+                } catch (IllegalStateException e) {
+                    // the poster lost docs, the rest would be lost too
+                    throw e;
+                } catch (Exception e){
+                    LOG.error(e.getMessage(), e);
                     try {
-                        destSolr.addBean(bean);
-                    } catch (Exception e1) {
-                        errCount++;
+                        Thread.sleep(4000);
+                    } catch (InterruptedException e1) {
                         e1.printStackTrace();
                     }
                 }
-                LOG.info("Clearing the buffer. Errors :{}", errCount);
-                //possibly an error in documents
-                buffer.clear();
-            } catch (Exception e){
-                LOG.error(e.getMessage(), e);
-                try {
-                    Thread.sleep(4000);
-                } catch (InterruptedException e1) {
-                    e1.printStackTrace();
-                }
             }
         }
-        try {
-            //left out
-            if (!buffer.isEmpty()) {
-                destSolr.addBeans(buffer);
+        return count;
+    }
+
+    /**
+     * Calls the task with a watch on the thread
+     * @param task the task
+     * @param watchdog watchdog which interrupts the task when it takes longer than the timeout
+     * @return result of task
+     * @throws TimeoutException when the task was interrupted for the timeout
+     * @throws Exception when the task fails
+     */
+    private ContentBean callWithTimeout(Callable<ContentBean> task, Watchdog watchdog)
+            throws Exception {
+        try (Watchdog.Watch watch = watchdog.watch(threadTimeout)) {
+            ContentBean result;
+            try {
+                result = task.call();
+            } catch (Exception e) {
+                if (watch.isTimedOut()) {
+                    throw new TimeoutException("Timed out after " + threadTimeout + "ms");
+                }
+                throw e;
             }
-            LOG.info("Committing before exit. Num Docs = {}", count);
-            UpdateResponse response = destSolr.commit();
-            LOG.info("Commit response : {}", response);
-        } catch (Exception e) {
-            e.printStackTrace();
-        } finally {
-            if (service != null) {
-                System.out.println("Shutting down the thread pool");
-                service.shutdown();
+            if (watch.isTimedOut()) {
+                throw new TimeoutException("Timed out after " + threadTimeout + "ms");
             }
+            return result;
         }
     }
 
@@ -193,7 +231,7 @@ public class DumpPoster implements Runnable {
             if (!file.exists()) {
                 throw new IllegalArgumentException(file + " doesnt exists");
             }
-            return new FileIterator(file);
+            return new ParallelFileWalker(file, nWalkers, 10 * 1000, manifest);
         } else if (listFile != null ) {
             if (!listFile.exists()) {
                 throw new IllegalArgumentException(listFile + " doesnt exists");
@@ -0,0 +1,278 @@
+package edu.usc.cs.ir.cwork.graph;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Graph model in compressed sparse rows, for graphs with millions of vertices.
+ * The vertices are numbered from 0 to n-1, and the incoming edges of vertex v are
+ * {@code sources[offsets[v]] .. sources[offsets[v+1] - 1]}.
+ * Unlike {@link Graph}, this takes a few bytes per edge and no objects per vertex.
+ */
+public class CompactGraph {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CompactGraph.class);
+
+    private final String[] ids;
+    private final Map<String, Integer> index;
+    private final int[] offsets;
+    private final int[] sources;
+    private final int[] outDegrees;
+    private final double[] scores;
+
+    private CompactGraph(String[] ids, Map<String, Integer> index,
+                         int[] offsets, int[] sources, int[] outDegrees) {
+        this.ids = ids;
+        this.index = index;
+        this.offsets = offsets;
+        this.sources = sources;
+        this.outDegrees = outDegrees;
+        this.scores = new double[ids.length];
+    }
+
+    /**
+     * Builds graph from edges. Duplicate edges and self loops are skipped
+     * @param ids the vertex ids, index of id is the vertex number
+     * @param index vertex id to vertex number
+     * @param edgeSrc source vertex of edges
+     * @param edgeDest destination vertex of edges
+     * @param numEdges number of edges
+     * @return graph
+     */
+    private static CompactGraph build(String[] ids, Map<String, Integer> index,
+                                      int[] edgeSrc, int[] edgeDest, int numEdges) {
+        int n = ids.length;
+        int[] offsets = new int[n + 1];
+        for (int i = 0; i < numEdges; i++) {
+            offsets[edgeDest[i] + 1]++;
+        }
+        for (int v = 0; v < n; v++) {
+            offsets[v + 1] += offsets[v];
+        }
+        int[] sources = new int[numEdges];
+        int[] fill = Arrays.copyOf(offsets, n);
+        for (int i = 0; i < numEdges; i++) {
+            sources[fill[edgeDest[i]]++] = edgeSrc[i];
+        }
+
+        // sort and de-duplicate each row, compacting the rows in place
+        int[] outDegrees = new int[n];
+        int pos = 0;
+        int rowStart = 0;
+        for (int v = 0; v < n; v++) {
+            int rowEnd = offsets[v + 1];
+            Arrays.sort(sources, rowStart, rowEnd);
+            offsets[v] = pos;
+            for (int i = rowStart; i < rowEnd; i++) {
+                int src = sources[i];
+                if (src != v && (pos == offsets[v] || sources[pos - 1] != src)) {
+                    sources[pos++] = src;
+                    outDegrees[src]++;
+                }
+            }
+            rowStart = rowEnd;
+        }
+        offsets[n] = pos;
+        return new CompactGraph(ids, index, offsets,
+                pos == sources.length ? sources : Arrays.copyOf(sources, pos), outDegrees);
+    }
+
+    /**
+     * Converts graph model to compact graph. The edges of vertices are treated as undirected
+     * and the scores of vertices are copied.
+     * @param graph the graph
+     * @return compact graph
+     */
+    public static CompactGraph fromGraph(Graph graph) {
+        Builder builder = new Builder();
+        for (Vertex vertex : graph.getVertices()) {
+            builder.addVertex(vertex.getId());
+            for (Vertex other : vertex.getEdges()) {
+                builder.addEdge(vertex.getId(), other.getId());
+                builder.addEdge(other.getId(), vertex.getId());
+            }
+        }
+        CompactGraph compact = builder.build();
+        for (Vertex vertex : graph.getVertices()) {
+            compact.scores[compact.getIndex(vertex.getId())] = vertex.getScore();
+        }
+        return compact;
+    }
+
+    /**
+     * Loads graph from the edges file written by
+     * {@link edu.usc.cs.ir.cwork.relevance.GraphGenerator}, either a text file having one
+     * directed edge per line as {@code id1 \t id2}, or a binary {@link EdgeFile}.
+     * The scores are initialized to 1/n.
+     * @param edgesFile the edges file
+     * @return graph
+     * @throws IOException when the file can't be read
+     */
+    public static CompactGraph load(File edgesFile) throws IOException {
+        CompactGraph graph = EdgeFile.isBinary(edgesFile) ? loadBinary(edgesFile) : loadText(edgesFile);
+        Arrays.fill(graph.scores, 1.0 / Math.max(1, graph.getNumVertices()));
+        LOG.info("Loaded {}, Vertices : {}, Edges : {}", edgesFile,
+                graph.getNumVertices(), graph.getNumEdges());
+        return graph;
+    }
+
+    private static CompactGraph loadBinary(File edgesFile) throws IOException {
+        EdgeFile.Reader reader = new EdgeFile.Reader(edgesFile);
+        if (reader.getNumEdges() > Integer.MAX_VALUE) {
+            throw new IOException("Too many edges for compact graph : " + reader.getNumEdges());
+        }
+        String[] ids = reader.readIds();
+        Map<String, Integer> index = new HashMap<>(ids.length * 4 / 3 + 1);
+        for (int i = 0; i < ids.length; i++) {
+            index.put(ids[i], i);
+        }
+        int numEdges = (int) reader.getNumEdges();
+        int[] edgeSrc = new int[numEdges];
+        int[] edgeDest = new int[numEdges];
+        int[] count = {0};
+        reader.forEachEdge((src, dest) -> {
+            edgeSrc[count[0]] = src;
+            edgeDest[count[0]++] = dest;
+        });
+        return build(ids, index, edgeSrc, edgeDest, numEdges);
+    }
+
+    private static CompactGraph loadText(File edgesFile) throws IOException {
+        Builder builder = new Builder();
+        long st = System.currentTimeMillis();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(edgesFile), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int tab = line.indexOf('\t');
+                if (tab < 0) {
+                    continue;
+                }
+                builder.addEdge(line.substring(0, tab), line.substring(tab + 1).trim());
+                if (System.currentTimeMillis() - st > 2000) {
+                    st = System.currentTimeMillis();
+                    LOG.info("Vertices : {}, Edges : {}", builder.ids.size(), builder.numEdges);
+                }
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Builder of compact graph, which numbers the vertices in the order they are seen
+     */
+    public static class Builder implements EdgeSink {
+        private final List<String> ids = new ArrayList<>();
+        private final Map<String, Integer> index = new HashMap<>();
+        private int[] edgeSrc = new int[16];
+        private int[] edgeDest = new int[16];
+        private int numEdges;
+
+        /**
+         * Adds a vertex, if it isn't there
+         * @param id vertex id
+         * @return vertex number
+         */
+        public int addVertex(String id) {
+            Integer idx = index.get(id);
+            if (idx == null) {
+                idx = ids.size();
+                ids.add(id);
+                index.put(id, idx);
+            }
+            return idx;
+        }
+
+        /**
+         * Adds a directed edge
+         * @param src source vertex id
+         * @param dest destination vertex id
+         */
+        @Override
+        public void addEdge(String src, String dest) {
+            if (numEdges == edgeSrc.length) {
+                edgeSrc = Arrays.copyOf(edgeSrc, numEdges * 2);
+                edgeDest = Arrays.copyOf(edgeDest, numEdges * 2);
+            }
+            edgeSrc[numEdges] = addVertex(src);
+            edgeDest[numEdges] = addVertex(dest);
+            numEdges++;
+        }
+
+        public CompactGraph build() {
+            return CompactGraph.build(ids.toArray(new String[ids.size()]), index,
+                    edgeSrc, edgeDest, numEdges);
+        }
+    }
+
+    public int getNumVertices() {
+        return ids.length;
+    }
+
+    public int getNumEdges() {
+        return offsets[ids.length];
+    }
+
+    /**
+     * @param id vertex id
+     * @return vertex number, or -1 when there is no such vertex
+     */
+    public int getIndex(String id) {
+        Integer idx = index.get(id);
+        return idx == null ? -1 : idx;
+    }
+
+    /**
+     * @param v vertex number
+     * @return vertex id
+     */
+    public String getId(int v) {
+        return ids[v];
+    }
+
+    /**
+     * Offsets of incoming edges; the incoming edges of v are at offsets[v] to offsets[v+1] - 1
+     * in {@link #getSources()}
+     * @return offsets, of length n+1
+     */
+    public int[] getOffsets() {
+        return offsets;
+    }
+
+    /**
+     * @return source vertices of incoming edges, row by row
+     */
+    public int[] getSources() {
+        return sources;
+    }
+
+    /**
+     * @return number of outgoing edges of vertices
+     */
+    public int[] getOutDegrees() {
+        return outDegrees;
+    }
+
+    /**
+     * @return scores of vertices, which can be updated in place
+     */
+    public double[] getScores() {
+        return scores;
+    }
+
+    public double getScore(String id) {
+        return scores[getIndex(id)];
+    }
+}
@@ -0,0 +1,297 @@
+package edu.usc.cs.ir.cwork.graph;
+
+import org.kohsuke.args4j.CmdLineException;
+import org.kohsuke.args4j.CmdLineParser;
+import org.kohsuke.args4j.Option;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binary file of graph edges. The vertex ids are stored once in a dictionary, and the
+ * edges are pairs of vertex numbers of fixed width, so the edges are read from a memory
+ * mapped file without parsing or copying strings.
+ * <pre>
+ *   header     : magic (int), number of vertices (int), number of edges (long)
+ *   edges      : number of edges * (source (int), destination (int))
+ *   dictionary : number of vertices * (length (int), UTF-8 bytes of id)
+ * </pre>
+ * The dictionary is at the end so that the edges can be written as they come, and the
+ * vertex numbers are the order of first appearance of ids.
+ *
+ * This class also offers the CLI for converting the text edges file of
+ * {@link edu.usc.cs.ir.cwork.relevance.GraphGenerator} to binary and back.
+ */
+public class EdgeFile {
+
+    private static final Logger LOG = LoggerFactory.getLogger(EdgeFile.class);
+
+    public static final int MAGIC = 0x45444745; // "EDGE"
+    public static final int HEADER_SIZE = 16;
+    public static final int EDGE_SIZE = 8;
+    /**
+     * Max bytes mapped at once, a multiple of edge size
+     */
+    public static final long MAX_MAP_SIZE = (Integer.MAX_VALUE / EDGE_SIZE) * (long) EDGE_SIZE;
+
+    public enum Format {
+        text,
+        binary
+    }
+
+    @Option(name = "-in", required = true, usage = "Input edges file")
+    private File inFile;
+
+    @Option(name = "-out", required = true, usage = "Output edges file")
+    private File outFile;
+
+    @Option(name = "-to", required = true, usage = "Output format")
+    private Format format;
+
+    /**
+     * Consumer of the edges as vertex numbers
+     */
+    public interface IntEdgeConsumer {
+        void accept(int src, int dest);
+    }
+
+    /**
+     * Checks if the file is a binary edges file
+     * @param file the file
+     * @return true if the file starts with the magic number
+     * @throws IOException when the file can't be read
+     */
+    public static boolean isBinary(File file) throws IOException {
+        if (file.length() < HEADER_SIZE) {
+            return false;
+        }
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            return in.readInt() == MAGIC;
+        }
+    }
+
+    /**
+     * Writes binary edges file
+     */
+    public static class Writer implements EdgeSink, Closeable {
+        private final File file;
+        private final DataOutputStream out;
+        private final Map<String, Integer> index = new HashMap<>();
+        private final List<String> ids = new ArrayList<>();
+        private long numEdges;
+
+        public Writer(File file) throws IOException {
+            this.file = file;
+            this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+            // header is filled on close
+            out.write(new byte[HEADER_SIZE]);
+        }
+
+        private int getIndex(String id) {
+            Integer idx = index.get(id);
+            if (idx == null) {
+                idx = ids.size();
+                ids.add(id);
+                index.put(id, idx);
+            }
+            return idx;
+        }
+
+        @Override
+        public void addEdge(String src, String dest) throws IOException {
+            out.writeInt(getIndex(src));
+            out.writeInt(getIndex(dest));
+            numEdges++;
+        }
+
+        public long getNumEdges() {
+            return numEdges;
+        }
+
+        @Override
+        public void close() throws IOException {
+            for (String id : ids) {
+                byte[] bytes = id.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+            out.close();
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.writeInt(MAGIC);
+                raf.writeInt(ids.size());
+                raf.writeLong(numEdges);
+            }
+        }
+    }
+
+    /**
+     * Reads binary edges file
+     */
+    public static class Reader {
+        private final File file;
+        private final int numVertices;
+        private final long numEdges;
+
+        public Reader(File file) throws IOException {
+            this.file = file;
+            try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+                if (in.readInt() != MAGIC) {
+                    throw new IOException(file + " is not a binary edges file");
+                }
+                this.numVertices = in.readInt();
+                this.numEdges = in.readLong();
+            }
+        }
+
+        public int getNumVertices() {
+            return numVertices;
+        }
+
+        public long getNumEdges() {
+            return numEdges;
+        }
+
+        /**
+         * Reads the dictionary of vertex ids
+         * @return vertex ids, index of id is the vertex number
+         * @throws IOException when the file can't be read
+         */
+        public String[] readIds() throws IOException {
+            String[] ids = new String[numVertices];
+            try (FileInputStream stream = new FileInputStream(file)) {
+                long skip = HEADER_SIZE + numEdges * EDGE_SIZE;
+                stream.getChannel().position(skip);
+                DataInputStream in = new DataInputStream(new BufferedInputStream(stream, 1 << 16));
+                byte[] bytes = new byte[256];
+                for (int i = 0; i < numVertices; i++) {
+                    int len = in.readInt();
+                    if (len > bytes.length) {
+                        bytes = new byte[Math.max(len, bytes.length * 2)];
+                    }
+                    in.readFully(bytes, 0, len);
+                    ids[i] = new String(bytes, 0, len, StandardCharsets.UTF_8);
+                }
+            }
+            return ids;
+        }
+
+        /**
+         * Reads the edges from the memory mapped file
+         * @param consumer consumer of edges
+         * @throws IOException when the file can't be read
+         */
+        public void forEachEdge(IntEdgeConsumer consumer) throws IOException {
+            try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+                 FileChannel channel = raf.getChannel()) {
+                long remaining = numEdges * EDGE_SIZE;
+                long position = HEADER_SIZE;
+                while (remaining > 0) {
+                    long size = Math.min(remaining, MAX_MAP_SIZE);
+                    MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+                    IntBuffer ints = buffer.order(ByteOrder.BIG_ENDIAN).asIntBuffer();
+                    while (ints.remaining() >= 2) {
+                        consumer.accept(ints.get(), ints.get());
+                    }
+                    position += size;
+                    remaining -= size;
+                }
+            }
+        }
+    }
+
+    /**
+     * Converts text edges file to binary
+     * @param textFile edges file having 'id1 \t id2' lines
+     * @param binaryFile binary edges file
+     * @return number of edges
+     * @throws IOException when the files can't be read or written
+     */
+    public static long toBinary(File textFile, File binaryFile) throws IOException {
+        long st = System.currentTimeMillis();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(textFile), StandardCharsets.UTF_8));
+             Writer writer = new Writer(binaryFile)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int tab = line.indexOf('\t');
+                if (tab < 0) {
+                    continue;
+                }
+                writer.addEdge(line.substring(0, tab), line.substring(tab + 1).trim());
+                if (System.currentTimeMillis() - st > 2000) {
+                    st = System.currentTimeMillis();
+                    LOG.info("Edges : {}", writer.getNumEdges());
+                }
+            }
+            return writer.getNumEdges();
+        }
+    }
+
+    /**
+     * Converts binary edges file to text
+     * @param binaryFile binary edges file
+     * @param textFile edges file having 'id1 \t id2' lines
+     * @return number of edges
+     * @throws IOException when the files can't be read or written
+     */
+    public static long toText(File binaryFile, File textFile) throws IOException {
+        Reader reader = new Reader(binaryFile);
+        String[] ids = reader.readIds();
+        try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(textFile), StandardCharsets.UTF_8))) {
+            IOException[] error = {null};
+            reader.forEachEdge((src, dest) -> {
+                if (error[0] == null) {
+                    try {
+                        writer.write(ids[src] + "\t" + ids[dest] + "\n");
+                    } catch (IOException e) {
+                        error[0] = e;
+                    }
+                }
+            });
+            if (error[0] != null) {
+                throw error[0];
+            }
+        }
+        return reader.getNumEdges();
+    }
+
+    public static void main(String[] args) throws IOException {
+        EdgeFile edgeFile = new EdgeFile();
+        CmdLineParser parser = new CmdLineParser(edgeFile);
+        try {
+            parser.parseArgument(args);
+        } catch (CmdLineException e) {
+            System.err.println(e.getLocalizedMessage());
+            parser.printUsage(System.err);
+            return;
+        }
+        long count = edgeFile.format == Format.binary
+                ? toBinary(edgeFile.inFile, edgeFile.outFile)
+                : toText(edgeFile.inFile, edgeFile.outFile);
+        System.out.println("Total Edges : " + count);
+    }
+}
@@ -0,0 +1,17 @@
+package edu.usc.cs.ir.cwork.graph;
+
+import java.io.IOException;
+
+/**
+ * Consumer of the edges of graph
+ */
+public interface EdgeSink {
+
+    /**
+     * Adds a directed edge
+     * @param src source vertex id
+     * @param dest destination vertex id
+     * @throws IOException when the edge can't be written
+     */
+    void addEdge(String src, String dest) throws IOException;
+}
@@ -0,0 +1,117 @@
+package edu.usc.cs.ir.cwork.nutch;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Tracks the records which are in flight when they are acknowledged out of order,
+ * for example by parallel workers, and commits the mark of the oldest record which
+ * is not yet acknowledged.
+ *
+ * Saving a checkpoint syncs a file to disk, so the commits are throttled : the mark is
+ * committed when the last commit is older than the interval, or when enough records are
+ * acknowledged since then. Call {@link #flush()} at the end of job to commit the latest mark.
+ * The limits are taken from these system properties :
+ * <pre>
+ *     checkpoint.interval : min millis between two commits (default: 5000)
+ *     checkpoint.records  : max number of records acknowledged without a commit (default: 10000)
+ * </pre>
+ */
+public class AckTracker {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AckTracker.class);
+
+    private final RecordIterator<?> records;
+    private final long interval;
+    private final long maxRecords;
+    private final TreeMap<Long, Checkpoint.Mark> pending = new TreeMap<>();
+    private long nextSeq = 0;
+    private long maxAckedSeq = -1;
+    private Checkpoint.Mark maxAckedMark;
+    private long numUncommitted;
+    private long lastCommitTime = System.currentTimeMillis();
+
+    /**
+     * Creates a tracker having limits from system properties
+     * @param records the stream whose checkpoint is to be committed
+     */
+    public AckTracker(RecordIterator<?> records) {
+        this(records, Long.getLong("checkpoint.interval", 5 * 1000L),
+                Long.getLong("checkpoint.records", 10 * 1000L));
+    }
+
+    /**
+     * @param records the stream whose checkpoint is to be committed
+     * @param interval min millis between two commits
+     * @param maxRecords max number of records acknowledged without a commit
+     */
+    public AckTracker(RecordIterator<?> records, long interval, long maxRecords) {
+        this.records = records;
+        this.interval = interval;
+        this.maxRecords = maxRecords;
+    }
+
+    /**
+     * Starts tracking a record
+     * @param mark the mark of record, i.e. the mark obtained before reading it
+     * @return sequence number for acknowledging the record
+     */
+    public synchronized long track(Checkpoint.Mark mark) {
+        pending.put(nextSeq, mark);
+        return nextSeq++;
+    }
+
+    /**
+     * Acknowledges the records, and commits the resume point when it is due
+     * @param seqs sequence numbers of records
+     */
+    public synchronized void ack(Collection<Long> seqs) {
+        for (Long seq : seqs) {
+            Checkpoint.Mark mark = pending.remove(seq);
+            if (mark != null && seq > maxAckedSeq) {
+                maxAckedSeq = seq;
+                maxAckedMark = mark;
+            }
+        }
+        numUncommitted += seqs.size();
+        if (numUncommitted >= maxRecords
+                || System.currentTimeMillis() - lastCommitTime >= interval) {
+            Map.Entry<Long, Checkpoint.Mark> oldest = pending.firstEntry();
+            // when all caught up, the last acknowledged record will be seen again on resume
+            commit(oldest != null ? oldest.getValue() : maxAckedMark);
+        }
+    }
+
+    /**
+     * Commits the resume point now. When all the records are acknowledged, this is the
+     * current mark of the records, i.e. the end of stream once they are all read.
+     * Call this from the thread reading the records, after the workers are done.
+     */
+    public synchronized void flush() {
+        Map.Entry<Long, Checkpoint.Mark> oldest = pending.firstEntry();
+        if (oldest != null) {
+            LOG.warn("{} records are not acknowledged, the checkpoint stays before them",
+                    pending.size());
+            commit(oldest.getValue());
+        } else {
+            commit(records.getMark());
+        }
+    }
+
+    private void commit(Checkpoint.Mark mark) {
+        records.commit(mark);
+        numUncommitted = 0;
+        lastCommitTime = System.currentTimeMillis();
+    }
+
+    /**
+     * @return number of records which are not acknowledged
+     */
+    public synchronized int getNumPending() {
+        return pending.size();
+    }
+}
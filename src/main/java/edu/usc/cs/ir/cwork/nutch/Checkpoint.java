@@ -0,0 +1,154 @@
+package edu.usc.cs.ir.cwork.nutch;
+
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Durable progress of a job which consumes segment parts.
+ * The checkpoint file records the parts which are completely consumed and the
+ * byte position of the next record to be consumed in the parts which are in progress.
+ *
+ * File format, one entry per line :
+ * <pre>
+ *     done  TAB  part-path
+ *     at    TAB  part-path  TAB  position
+ * </pre>
+ * @see RecordIterator#commit(Mark)
+ */
+public class Checkpoint {
+
+    private static final Logger LOG = LoggerFactory.getLogger(Checkpoint.class);
+    public static final String DONE = "done";
+    public static final String AT = "at";
+
+    /**
+     * Resume point of a stream of records. Everything before the mark is consumed.
+     */
+    public static class Mark {
+        private final Collection<String> done;
+        private final Map<String, Long> positions;
+
+        /**
+         * @param done parts which are completely consumed
+         * @param positions position of next record in the parts which are in progress
+         */
+        public Mark(Collection<String> done, Map<String, Long> positions) {
+            this.done = done;
+            this.positions = positions;
+        }
+
+        public Collection<String> getDone() {
+            return done;
+        }
+
+        public Map<String, Long> getPositions() {
+            return positions;
+        }
+    }
+
+    private final File file;
+    private final Set<String> done = new LinkedHashSet<>();
+    private final Map<String, Long> positions = new HashMap<>();
+
+    private Checkpoint(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Loads the checkpoint from file. An empty checkpoint is created when the file is missing.
+     * @param file checkpoint file
+     * @return checkpoint
+     * @throws IOException when the file can't be read
+     */
+    public static Checkpoint load(File file) throws IOException {
+        Checkpoint checkpoint = new Checkpoint(file);
+        if (file.exists()) {
+            List<String> lines = FileUtils.readLines(file, StandardCharsets.UTF_8);
+            for (String line : lines) {
+                String[] parts = line.split("\t");
+                if (DONE.equals(parts[0]) && parts.length == 2) {
+                    checkpoint.done.add(parts[1]);
+                } else if (AT.equals(parts[0]) && parts.length == 3) {
+                    checkpoint.positions.put(parts[1], Long.parseLong(parts[2]));
+                } else if (!line.trim().isEmpty()) {
+                    LOG.warn("Skip : Invalid checkpoint line {}", line);
+                }
+            }
+            LOG.info("Loaded checkpoint from {}. Done parts : {}, Parts in progress : {}",
+                    file, checkpoint.done.size(), checkpoint.positions.size());
+        } else {
+            LOG.info("No checkpoint at {}, starting from the beginning", file);
+        }
+        return checkpoint;
+    }
+
+    /**
+     * @param part path to part
+     * @return true if the part was completely consumed
+     */
+    public boolean isDone(String part) {
+        return done.contains(part);
+    }
+
+    /**
+     * @param part path to part
+     * @return position to resume the part from. 0 when the part has not been started
+     */
+    public long getPosition(String part) {
+        return positions.getOrDefault(part, 0L);
+    }
+
+    /**
+     * Durably stores the mark. Parts that were done as per the loaded checkpoint stay done.
+     * The file is replaced atomically, so a crash leaves either the old or the new checkpoint.
+     * @param mark resume point
+     * @throws IOException when the checkpoint can't be written
+     */
+    public synchronized void save(Mark mark) throws IOException {
+        Set<String> allDone = new LinkedHashSet<>(done);
+        allDone.addAll(mark.getDone());
+        File tmp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream stream = new FileOutputStream(tmp)) {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8));
+            for (String part : allDone) {
+                writer.write(DONE + "\t" + part + "\n");
+            }
+            for (Map.Entry<String, Long> entry : mark.getPositions().entrySet()) {
+                if (!allDone.contains(entry.getKey())) {
+                    writer.write(AT + "\t" + entry.getKey() + "\t" + entry.getValue() + "\n");
+                }
+            }
+            writer.flush();
+            stream.getFD().sync();
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Creates a mark for the end of stream
+     * @param parts all the parts of stream
+     * @return mark having all parts done
+     */
+    public static Mark endOf(Collection<String> parts) {
+        return new Mark(parts, Collections.emptyMap());
+    }
+}
@@ -54,6 +54,12 @@ public class LastModifiedUpdater implements Runnable, Function<Content, SolrInpu
     @Option(name = "-batch", usage = "Batch size")
     private int batchSize = 1000;
 
+    @Option(name = "-checkpoint", usage = "Checkpoint file for resuming the job. Created when missing")
+    private File checkpointFile;
+
+    @Option(name = "-readers", usage = "Number of segment parts to read concurrently")
+    private int numReaders = 1;
+
     private SolrServer solrServer;
     private Function<URL, String> pathFunction;
 
@@ -118,8 +124,10 @@ public class LastModifiedUpdater implements Runnable, Function<Content, SolrInpu
     public void run() {
         try {
             this.init();
-            SolrDocUpdates updates = new SolrDocUpdates(this, this.segmentListFile);
-            long count = OutlinkUpdater.indexAll(solrServer, updates, batchSize);
+            Checkpoint checkpoint = checkpointFile == null ? null : Checkpoint.load(checkpointFile);
+            SolrDocUpdates updates = new SolrDocUpdates(this, this.segmentListFile,
+                    checkpoint, numReaders);
+            long count = OutlinkUpdater.indexAll(solrServer, updates, batchSize, updates::commit);
             System.out.println("Skipped : " + updates.getSkipCount());
             System.out.println("Count : " + count);
         } catch (Exception e) {
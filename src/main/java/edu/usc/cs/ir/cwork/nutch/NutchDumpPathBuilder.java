@@ -1,28 +1,134 @@
 package edu.usc.cs.ir.cwork.nutch;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.nutch.util.TableUtil;
 
 import java.io.File;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.function.Function;
 
 /**
  *
  * Maps url to path string (same format as nutch file dumper)
+ * The path is built in a reused buffer of the thread, with a reused digest, for the urls having
+ * plain host names; the others go through nutch's url reversing and java.io.File.
+ * The paths of recent urls are cached, since the same links (such as navigation bars and
+ * footers) repeat on many pages. The cache size is taken from 'nutch.path.cache.size'
+ * system property (default: 10000, 0 to disable).
  * Created by tg on 1/5/16.
  */
 public class NutchDumpPathBuilder implements Function<URL, String> {
 
+    public static final int DEF_CACHE_SIZE = 10000;
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+    private static final ThreadLocal<MessageDigest> DIGEST = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+    private static final ThreadLocal<StringBuilder> BUFFER = ThreadLocal.withInitial(
+            () -> new StringBuilder(256));
+
     private final String dumpDir;
+    private final String dumpDirUri;
+    private final Cache<String, String> cache;
 
     public NutchDumpPathBuilder(String dumpDir) {
+        this(dumpDir, Integer.getInteger("nutch.path.cache.size", DEF_CACHE_SIZE));
+    }
+
+    /**
+     * @param dumpDir the dump directory
+     * @param cacheSize max number of paths cached, 0 to disable the cache
+     */
+    public NutchDumpPathBuilder(String dumpDir, int cacheSize) {
         this.dumpDir = dumpDir;
+        String uri = new File(dumpDir).toURI().toString();
+        // the uri ends with '/' only when the directory exists
+        this.dumpDirUri = uri.endsWith("/") ? uri : uri + "/";
+        this.cache = cacheSize > 0 ? CacheBuilder.newBuilder().maximumSize(cacheSize).build() : null;
     }
 
     @Override
     public String apply(URL url) {
+        String urlStr = url.toString();
+        if (cache == null) {
+            return buildPath(url, urlStr);
+        }
+        String path = cache.getIfPresent(urlStr);
+        if (path == null) {
+            path = buildPath(url, urlStr);
+            cache.put(urlStr, path);
+        }
+        return path;
+    }
+
+    private String buildPath(URL url, String urlStr) {
+        String host = url.getHost();
+        if (!isPlainHost(host)) {
+            return buildPath(dumpDir, url);
+        }
+        StringBuilder sb = BUFFER.get();
+        sb.setLength(0);
+        sb.append(dumpDirUri);
+        // reversed host, with dots as path separators
+        int end = host.length();
+        for (int i = end - 1; i >= 0; i--) {
+            if (host.charAt(i) == '.') {
+                sb.append(host, i + 1, end).append('/');
+                end = i;
+            }
+        }
+        sb.append(host, 0, end).append('/');
+
+        MessageDigest digest = DIGEST.get();
+        byte[] hash = digest.digest(urlStr.getBytes(StandardCharsets.UTF_8));
+        for (byte b : hash) {
+            sb.append(HEX[(b >> 4) & 0xF]).append(HEX[b & 0xF]);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Checks if the host name has only the characters which need no escaping in uri,
+     * and no empty labels, so that the fast path gives same result as {@link #buildPath(String, URL)}
+     * @param host host name
+     * @return true if plain host
+     */
+    private static boolean isPlainHost(String host) {
+        int len = host.length();
+        if (len == 0 || host.charAt(0) == '.' || host.charAt(len - 1) == '.') {
+            return false;
+        }
+        for (int i = 0; i < len; i++) {
+            char ch = host.charAt(i);
+            if (ch == '.') {
+                if (host.charAt(i - 1) == '.') {
+                    return false;
+                }
+            } else if (!(ch >= 'a' && ch <= 'z' || ch >= 'A' && ch <= 'Z'
+                    || ch >= '0' && ch <= '9' || ch == '-' || ch == '_')) {
+                return false;
+            }
+        }
+        return true;
+    }
 
+    /**
+     * Builds the path, as the nutch file dumper does
+     * @param dumpDir dump directory
+     * @param url the url
+     * @return path uri
+     */
+    static String buildPath(String dumpDir, URL url) {
         String[] reversedURL = TableUtil.reverseUrl(url).split(":");
         reversedURL[0] = reversedURL[0].replace('.', '/');
 
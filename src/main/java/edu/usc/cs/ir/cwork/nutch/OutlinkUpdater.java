@@ -1,8 +1,11 @@
 package edu.usc.cs.ir.cwork.nutch;
 
-import edu.usc.cs.ir.cwork.solr.SolrDocUpdates;
+import edu.usc.cs.ir.cwork.solr.BatchPoster;
+import edu.usc.cs.ir.cwork.solr.IndexPipeline;
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
 import org.apache.nutch.parse.Outlink;
 import org.apache.nutch.parse.Parse;
 import org.apache.nutch.parse.ParseResult;
@@ -31,9 +34,13 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 import java.util.function.Function;
 
 /**
+ * Parses the nutch segments for outlinks and updates them to solr.
+ * The calling thread reads the segments, {@code -threads} workers parse the html content,
+ * each with its own nutch parser, and a poster thread posts the updates to solr.
  * Created by tg on 12/21/15.
  */
 public class OutlinkUpdater implements Runnable, Function<Content, SolrInputDocument> {
@@ -55,8 +62,22 @@ public class OutlinkUpdater implements Runnable, Function<Content, SolrInputDocu
     @Option(name = "-batch", usage = "Batch size")
     private int batchSize = 1000;
 
+    @Option(name = "-checkpoint", usage = "Checkpoint file for resuming the job. Created when missing")
+    private File checkpointFile;
+
+    @Option(name = "-readers", usage = "Number of segment parts to read concurrently")
+    private int numReaders = 1;
+
+    @Option(name = "-threads", usage = "Number of parser threads")
+    private int numThreads = 1;
+
+    @Option(name = "-types", usage = "Comma separated content types to be parsed, the others are skipped")
+    private String contentTypes = "text/html,application/xhtml+xml";
+
     private Configuration nutchConf;
-    private ParseUtil parseUtil;
+    // nutch parser plugins are not known to be thread safe
+    private ThreadLocal<ParseUtil> parseUtils;
+    private Set<String> parseTypes;
     private SolrServer solrServer;
     private Function<URL, String> pathFunction;
 
@@ -69,7 +90,11 @@ public class OutlinkUpdater implements Runnable, Function<Content, SolrInputDocu
                 new URL[]{ new File(nutchHome, "conf").toURI().toURL()},
                 nutchConf.getClassLoader());
         nutchConf.setClassLoader(loader);
-        parseUtil = new ParseUtil(nutchConf);
+        parseUtils = ThreadLocal.withInitial(() -> new ParseUtil(nutchConf));
+        parseTypes = new HashSet<>();
+        for (String type : contentTypes.split(",")) {
+            parseTypes.add(type.trim().toLowerCase());
+        }
 
         //Step 2: initialize solr
         solrServer = new HttpSolrServer(solrUrl.toString());
@@ -99,18 +124,33 @@ public class OutlinkUpdater implements Runnable, Function<Content, SolrInputDocu
         return paths;
     }
 
+    /**
+     * Checks if the content type is one of the types to be parsed, ignoring the parameters
+     * such as charset
+     * @param contentType content type
+     * @return true if the content should be parsed
+     */
+    private boolean isParseType(String contentType) {
+        if (contentType == null) {
+            return false;
+        }
+        int end = contentType.indexOf(';');
+        String type = (end < 0 ? contentType : contentType.substring(0, end)).trim().toLowerCase();
+        return parseTypes.contains(type);
+    }
+
     /**
      * Maps the nutch protocol content into solr input doc
      * @param content nutch content
-     * @return solr input document
+     * @return solr input document, null when the content is skipped or has no outlinks
      * @throws Exception when an error happens
      */
     public SolrInputDocument apply(Content content){
-        if (ParseSegment.isTruncated(content)) {
+        if (!isParseType(content.getContentType()) || ParseSegment.isTruncated(content)) {
             return null;
         }
         try {
-            ParseResult result = parseUtil.parse(content);
+            ParseResult result = parseUtils.get().parse(content);
             if (!result.isSuccess()) {
                 return null;
             }
@@ -165,63 +205,49 @@ public class OutlinkUpdater implements Runnable, Function<Content, SolrInputDocu
     public static long indexAll(SolrServer solr,
                          Iterator<SolrInputDocument> docsStream,
                          int bufferSize) {
-        List<SolrInputDocument> buffer = new ArrayList<>(bufferSize);
+        return indexAll(solr, docsStream, bufferSize, () -> {});
+    }
+
+    /**
+     * Indexes all the documents in the stream to solr
+     * @param solr the solr server
+     * @param docsStream input doc stream
+     * @param bufferSize buffer size
+     * @param onFlush callback after every flush of buffer, useful for checkpointing
+     * @return number of documents indexed
+     * @throws IllegalStateException when docs can neither be posted nor written to dead letters
+     */
+    public static long indexAll(SolrServer solr,
+                         Iterator<SolrInputDocument> docsStream,
+                         int bufferSize, Runnable onFlush) {
+        // all the docs taken from stream are done when a batch is done
+        BatchPoster poster = BatchPoster.create(solr, bufferSize, (done, lost, failed) -> {
+            if (!lost.isEmpty()) {
+                throw new IllegalStateException(lost.size() + " docs couldn't be posted to solr,"
+                        + " nor written to dead letters (-Dsolr.deadletters)");
+            }
+            onFlush.run();
+        });
 
         long count = 0;
         int printDelay = 2 * 1000;
         long t1 = System.currentTimeMillis();
         while(docsStream.hasNext()) {
 
-            buffer.add(docsStream.next());
+            poster.add(docsStream.next());
             count++;
 
-            if (buffer.size() >= bufferSize) {
-                // process
-                try {
-                    solr.add(buffer);
-                } catch (SolrServerException e) {
-                    try {
-                        Thread.sleep(10*1000);
-                    } catch (InterruptedException e1) {
-                        e1.printStackTrace();
-                    }
-                    //One more attempt: add one by one
-                    for (SolrInputDocument document : buffer) {
-                        try {
-                            solr.add(document);
-                        } catch (Exception e1) {
-                            e1.printStackTrace();
-                        }
-                    }
-                } catch (IOException e) {
-                    LOG.error(e.getMessage(), e);
-                    try {
-                        Thread.sleep(10*1000);
-                    } catch (InterruptedException e1) {
-                        e1.printStackTrace();
-                    }
-                }
-
-                //empty the buffer.
-                buffer.clear();
-            }
-
             if (System.currentTimeMillis() - t1 > printDelay) {
                 t1 = System.currentTimeMillis();
-                LOG.info("Num docs : {}", count);
+                LOG.info("Num docs : {}, Failed : {}", count, poster.getNumFailed());
             }
         }
 
-        if (!buffer.isEmpty()) {
-            //process left out docs in buffer
-            try {
-                solr.add(buffer);
-            } catch (SolrServerException | IOException e) {
-                e.printStackTrace();
-            }
-        }
+        //process left out docs in buffer
+        poster.close();
+        onFlush.run();
         try {
-            LOG.info("End || Count:: {}", count);
+            LOG.info("End || Count:: {}, Failed:: {}", count, poster.getNumFailed());
             LOG.info("Committing:: {}", solr.commit());
         } catch (SolrServerException | IOException e) {
             e.printStackTrace();
@@ -233,14 +259,36 @@ public class OutlinkUpdater implements Runnable, Function<Content, SolrInputDocu
     public void run() {
         try {
             this.init();
-            SolrDocUpdates updates = new SolrDocUpdates(this, this.segmentListFile);
-            updates.setSkipImages(true); //because images wont have outlinks
-            indexAll(solrServer, updates, batchSize);
+            Checkpoint checkpoint = checkpointFile == null ? null : Checkpoint.load(checkpointFile);
+            List<String> segments = FileUtils.readLines(segmentListFile);
+            List<Path> paths = new ArrayList<>();
+            for (String part : findContentParts(segments)) {
+                paths.add(new Path(part));
+            }
+            LOG.info("Found {} segments, {} parts", segments.size(), paths.size());
+            index(new RecordIterator<>(paths, checkpoint, numReaders));
         } catch (Exception e) {
             e.printStackTrace();
         }
     }
 
+    /**
+     * Updates the outlinks of records using a staged pipeline.
+     * The records of other content types are skipped by the reader, without waiting for a parser.
+     * @param recs records from segments
+     * @throws InterruptedException
+     * @throws IOException
+     * @throws SolrServerException
+     * @see IndexPipeline
+     */
+    private void index(RecordIterator<Content> recs)
+            throws InterruptedException, IOException, SolrServerException {
+        IndexPipeline pipeline = new IndexPipeline(solrServer, numThreads, 1, batchSize);
+        pipeline.setFilter(content -> isParseType(content.getContentType()));
+        pipeline.run(recs, this);
+        LOG.info("Commit response : {}", solrServer.commit());
+    }
+
     public static void main(String[] args) throws Exception {
 
         //args = "-list /home/tg/tmp/seg.list -dumpRoot /data2 -nutch /home/tg/work/coursework/cs572/nutch -solr http://locahost:8983/solr/collection3".split(" ");
@@ -253,7 +301,6 @@ public class OutlinkUpdater implements Runnable, Function<Content, SolrInputDocu
             e.getParser().printUsage(System.err);
             System.exit(1);
         }
-        generator.init();
         generator.run();
     }
 }
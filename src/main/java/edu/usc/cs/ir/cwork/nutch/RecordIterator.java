@@ -15,32 +15,108 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
+ * Iterates over the records of sequence file parts.
+ * The parts are read one after the other, or when more than one reader is requested,
+ * several parts are read concurrently (one reader thread per part) and their records
+ * are merged into a bounded queue. The order of records within a part is preserved.
+ *
  * Created by tg on 10/25/15.
  */
 public class RecordIterator<T extends Writable> implements Iterator<Pair<String, T>> {
 
     public static final Logger LOG = LoggerFactory.getLogger(RecordIterator.class);
+    /**
+     * Number of queue slots per reader thread
+     */
+    private static final int QUEUE_FACTOR = 16;
 
-    private Iterator<Path> paths;
+    private List<Path> paths;
+    private List<String> pathNames;
+    private int pathIdx = -1;
+    private Checkpoint checkpoint;
+    private Checkpoint.Mark nextMark;
     private Configuration conf;
     private FileSystem fs;
     private long count = 0;
-    private long errorCount = 0;
+    private AtomicLong errorCount = new AtomicLong();
 
     private SequenceFile.Reader reader;
+    private long partCount;
+    private long partErrors;
     private Pair<String, T> next;
     private Text key = new Text(); // reused
     private T value; // not re used, so created when needed
 
+    // parallel mode
+    private ExecutorService readers;
+    private BlockingQueue<Item<T>> queue;
+    private int numPartsPending;
+    private List<String> doneParts;
+    private Map<String, Long> positions;
+
+    /**
+     * A record read by a part reader, or the end of part when record is null
+     */
+    private static class Item<T> {
+        private final int part;
+        private final long start;
+        private final long end;
+        private final Pair<String, T> record;
+
+        private Item(int part, long start, long end, Pair<String, T> record) {
+            this.part = part;
+            this.start = start;
+            this.end = end;
+            this.record = record;
+        }
+    }
+
     public RecordIterator(List<Path> paths) {
-        LOG.info("Creating iterator for {} parts", paths.size());
-        this.paths = paths.iterator();
+        this(paths, null);
+    }
+
+    /**
+     * Creates an iterator which resumes from the checkpoint
+     * @param paths paths to parts
+     * @param checkpoint checkpoint to resume from, can be null
+     */
+    public RecordIterator(List<Path> paths, Checkpoint checkpoint) {
+        this(paths, checkpoint, 1);
+    }
+
+    /**
+     * Creates an iterator which reads parts concurrently and resumes from the checkpoint
+     * @param paths paths to parts
+     * @param checkpoint checkpoint to resume from, can be null
+     * @param numReaders number of parts to read concurrently
+     */
+    public RecordIterator(List<Path> paths, Checkpoint checkpoint, int numReaders) {
+        LOG.info("Creating iterator for {} parts, {} readers", paths.size(), numReaders);
+        this.paths = paths;
+        this.pathNames = new ArrayList<>(paths.size());
+        for (Path path : paths) {
+            pathNames.add(path.toString());
+        }
+        this.checkpoint = checkpoint;
         this.conf = Context.getInstance().getConf();
         this.fs = Context.getInstance().getFs();
+        if (numReaders > 1) {
+            startReaders(numReaders);
+        }
         this.next = this.getNext();
     }
 
@@ -57,46 +133,205 @@ public class RecordIterator<T extends Writable> implements Iterator<Pair<String,
     }
 
     private Pair<String, T> getNext() {
+        if (queue != null) {
+            return getNextParallel();
+        }
         if (reader != null ) {
             value = ReflectionUtils.newInstance((Class<T>) reader.getValueClass(), conf);
             //value = new Content();
             try {
+                long position = reader.getPosition();
                 if (reader.next(key, value)) {
                     count++;
+                    partCount++;
+                    nextMark = new Checkpoint.Mark(pathNames.subList(0, pathIdx),
+                            Collections.singletonMap(pathNames.get(pathIdx), position));
                     return new Pair<>(key.toString(), value);
                 }
             } catch (IOException e) {
-                errorCount++;
+                errorCount.incrementAndGet();
+                partErrors++;
                 LOG.warn(e.getMessage(), e);
             }
             //exception or reached the end of loop
             IOUtils.closeQuietly(reader);
             reader = null;
+            logPart(pathNames.get(pathIdx), partCount, partErrors);
         }
 
-        while (paths.hasNext()) {
+        while (++pathIdx < paths.size()) {
+            Path nextPath = paths.get(pathIdx);
+            if (checkpoint != null && checkpoint.isDone(nextPath.toString())) {
+                LOG.info("Skip : {}, it is done as per checkpoint", nextPath);
+                continue;
+            }
+            partCount = 0;
+            partErrors = 0;
             try {
                 //open a new reader
-                Path nextPath = paths.next();
-                LOG.info("Reading : {}", nextPath);
-                reader = new SequenceFile.Reader(conf, SequenceFile.Reader.file(nextPath));
+                reader = openReader(nextPath);
                 ///read from new reader
                 return getNext();
             } catch (IOException e) {
-                errorCount++;
+                errorCount.incrementAndGet();
+                LOG.warn(e.getMessage(), e);
+                IOUtils.closeQuietly(reader);
+                reader = null;
+                logPart(nextPath.toString(), 0, 1);
+            }
+        }
+
+        //end of content
+        nextMark = Checkpoint.endOf(pathNames);
+        return null;
+    }
+
+    /**
+     * Opens a reader for the part, and seeks to the checkpoint position
+     * @param path path to part
+     * @return reader
+     * @throws IOException
+     */
+    private SequenceFile.Reader openReader(Path path) throws IOException {
+        LOG.info("Reading : {}", path);
+        SequenceFile.Reader partReader = new SequenceFile.Reader(conf,
+                SequenceFile.Reader.file(path));
+        long position = checkpoint == null ? 0 : checkpoint.getPosition(path.toString());
+        if (position > 0) {
+            LOG.info("Resuming {} from position {}", path, position);
+            try {
+                partReader.seek(position);
+            } catch (IOException e) {
+                IOUtils.closeQuietly(partReader);
+                throw e;
+            }
+        }
+        return partReader;
+    }
+
+    private void logPart(String path, long numRecords, long numErrors) {
+        LOG.info("Finished : {}, Records : {}, Errors : {}", path, numRecords, numErrors);
+    }
+
+    private void startReaders(int numReaders) {
+        queue = new ArrayBlockingQueue<>(QUEUE_FACTOR * numReaders);
+        doneParts = Collections.emptyList();
+        positions = new LinkedHashMap<>();
+        readers = Executors.newFixedThreadPool(numReaders, r -> {
+            Thread thread = new Thread(r, "part-reader");
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (int i = 0; i < paths.size(); i++) {
+            if (checkpoint != null && checkpoint.isDone(pathNames.get(i))) {
+                LOG.info("Skip : {}, it is done as per checkpoint", pathNames.get(i));
+                continue;
+            }
+            final int part = i;
+            readers.submit(() -> readPart(part));
+            numPartsPending++;
+        }
+        readers.shutdown();
+    }
+
+    /**
+     * Reads all records of a part into the queue, followed by the end of part
+     * @param part index of part
+     */
+    private void readPart(int part) {
+        Path path = paths.get(part);
+        long numRecords = 0;
+        long numErrors = 0;
+        SequenceFile.Reader partReader = null;
+        try {
+            try {
+                partReader = openReader(path);
+                Text partKey = new Text();
+                while (true) {
+                    T partValue = ReflectionUtils.newInstance(
+                            (Class<T>) partReader.getValueClass(), conf);
+                    long start = partReader.getPosition();
+                    if (!partReader.next(partKey, partValue)) {
+                        break;
+                    }
+                    queue.put(new Item<>(part, start, partReader.getPosition(),
+                            new Pair<>(partKey.toString(), partValue)));
+                    numRecords++;
+                }
+            } catch (IOException e) {
+                numErrors++;
+                errorCount.incrementAndGet();
                 LOG.warn(e.getMessage(), e);
+            } finally {
+                IOUtils.closeQuietly(partReader);
             }
+            logPart(path.toString(), numRecords, numErrors);
+            queue.put(new Item<>(part, -1, -1, null));
+        } catch (InterruptedException e) {
+            LOG.warn("Interrupted while reading {}", path);
+            Thread.currentThread().interrupt();
         }
+    }
 
+    private Pair<String, T> getNextParallel() {
+        try {
+            while (numPartsPending > 0) {
+                Item<T> item = queue.take();
+                String part = pathNames.get(item.part);
+                if (item.record == null) {
+                    // end of part, all its records are consumed
+                    numPartsPending--;
+                    positions.remove(part);
+                    List<String> done = new ArrayList<>(doneParts);
+                    done.add(part);
+                    doneParts = done; // copy on write, marks share it
+                    continue;
+                }
+                positions.put(part, item.start);
+                nextMark = new Checkpoint.Mark(doneParts, new HashMap<>(positions));
+                positions.put(part, item.end);
+                count++;
+                return item.record;
+            }
+        } catch (InterruptedException e) {
+            LOG.warn("Interrupted while waiting for records");
+            Thread.currentThread().interrupt();
+            readers.shutdownNow();
+        }
         //end of content
+        nextMark = Checkpoint.endOf(pathNames);
         return null;
     }
 
+    /**
+     * Gets the resume point of this stream. All the records returned by {@link #next()}
+     * so far are before the mark.
+     * @return the mark
+     */
+    public Checkpoint.Mark getMark() {
+        return nextMark;
+    }
+
+    /**
+     * Stores the mark to checkpoint. Call this after the records before mark are
+     * acknowledged by the destination. This is a no-op when there is no checkpoint.
+     * @param mark the mark
+     */
+    public void commit(Checkpoint.Mark mark) {
+        if (checkpoint != null && mark != null) {
+            try {
+                checkpoint.save(mark);
+            } catch (IOException e) {
+                LOG.error("Couldn't save checkpoint : " + e.getMessage(), e);
+            }
+        }
+    }
+
     public long getCount() {
         return count;
     }
 
     public long getErrorCount() {
-        return errorCount;
+        return errorCount.get();
     }
 }
@@ -20,12 +20,21 @@ public class SegContentReader {
     private static final Logger LOG = LoggerFactory.getLogger(SegContentReader.class);
     private List<String> paths;
     private FileSystem fs;
+    private int numReaders = 1;
 
     public SegContentReader(List<String> paths) throws IOException {
         this.paths = paths;
         this.fs = FileSystem.get(Context.getInstance().getConf());
     }
 
+    /**
+     * Sets the number of parts to be read concurrently
+     * @param numReaders number of reader threads, 1 reads parts one after the other
+     */
+    public void setNumReaders(int numReaders) {
+        this.numReaders = numReaders;
+    }
+
     public List<Path> findAllParts(Path path) throws IOException {
         String name = path.getName();
         List<Path> parts = new ArrayList<>();
@@ -45,6 +54,16 @@ public class SegContentReader {
     }
 
     public RecordIterator read() throws IOException {
+        return read(null);
+    }
+
+    /**
+     * Reads the content parts, resuming from checkpoint
+     * @param checkpoint the checkpoint, null to read everything
+     * @return record iterator
+     * @throws IOException
+     */
+    public RecordIterator read(Checkpoint checkpoint) throws IOException {
 
         List<Path> partPaths = new ArrayList<>();
         for (String pathStr : paths) {
@@ -56,6 +75,6 @@ public class SegContentReader {
             Path path = new Path(pathStr);
             partPaths.addAll(findAllParts(path));
         }
-        return new RecordIterator(partPaths);
+        return new RecordIterator(partPaths, checkpoint, numReaders);
     }
 }
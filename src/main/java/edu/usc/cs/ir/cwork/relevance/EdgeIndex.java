@@ -0,0 +1,269 @@
+package edu.usc.cs.ir.cwork.relevance;
+
+import edu.usc.cs.ir.cwork.graph.EdgeSink;
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Inverted index of field values to documents, for generating edges between the documents
+ * which share a value. This is the offline equivalent of joining every document with solr
+ * {@code {!join from=field to=field}}: the documents are read once, and the edges are
+ * emitted by expanding the posting lists.
+ *
+ * The values are mapped to posting lists of integer document numbers, and the value strings
+ * are dropped once the postings are built. When the number of partitions is more than one,
+ * the (value, document) pairs are spilled to disk partitioned by the value hash, and the
+ * partitions are indexed one after another, so only one partition's values are in memory.
+ *
+ * Values shared by more than max document frequency documents (stop entities like "US")
+ * are skipped, since each of them would add a clique of df * df edges.
+ */
+public class EdgeIndex implements Closeable {
+
+    public static final Logger LOG = LoggerFactory.getLogger(EdgeIndex.class);
+    /**
+     * Delay between progress updates
+     */
+    public static final int DELAY = 2000;
+
+    private final int maxDf;
+    private final List<String> ids = new ArrayList<>();
+    private final List<int[]> postings = new ArrayList<>();
+
+    private Map<String, IntList> memIndex;
+    private File spillDir;
+    private DataOutputStream[] spills;
+    private boolean built;
+
+    private long numValues;
+    private long numSkipped;
+
+    /**
+     * Creates an index
+     * @param maxDf max number of documents of a value, values in more documents are skipped
+     * @param numPartitions number of partitions, more than one spills the values to disk
+     * @throws IOException when the spill files can't be created
+     */
+    public EdgeIndex(int maxDf, int numPartitions) throws IOException {
+        this.maxDf = maxDf;
+        if (numPartitions > 1) {
+            spillDir = Files.createTempDirectory("edges").toFile();
+            spills = new DataOutputStream[numPartitions];
+            for (int i = 0; i < numPartitions; i++) {
+                spills[i] = new DataOutputStream(new BufferedOutputStream(
+                        new FileOutputStream(new File(spillDir, "part-" + i))));
+            }
+        } else {
+            memIndex = new HashMap<>();
+        }
+    }
+
+    /**
+     * Adds a document
+     * @param id document id
+     * @param values values of the edge field
+     * @throws IOException when the values can't be spilled
+     */
+    public void add(String id, Collection<?> values) throws IOException {
+        if (built) {
+            throw new IllegalStateException("Index is already built");
+        }
+        int doc = ids.size();
+        ids.add(id);
+        Set<String> keys = new HashSet<>();
+        for (Object value : values) {
+            if (value != null) {
+                keys.add(toKey(value));
+            }
+        }
+        for (String key : keys) {
+            if (spills != null) {
+                DataOutputStream out = spills[(key.hashCode() & Integer.MAX_VALUE) % spills.length];
+                byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+                out.writeInt(doc);
+            } else {
+                memIndex.computeIfAbsent(key, k -> new IntList()).add(doc);
+            }
+        }
+    }
+
+    private static String toKey(Object value) {
+        return value instanceof Date ? Long.toString(((Date) value).getTime()) : value.toString();
+    }
+
+    /**
+     * Builds the posting lists from the added documents
+     * @throws IOException when the spilled values can't be read
+     */
+    private void build() throws IOException {
+        if (built) {
+            return;
+        }
+        built = true;
+        if (spills != null) {
+            for (DataOutputStream spill : spills) {
+                spill.close();
+            }
+            for (int i = 0; i < spills.length; i++) {
+                File part = new File(spillDir, "part-" + i);
+                Map<String, IntList> index = new HashMap<>();
+                try (DataInputStream in = new DataInputStream(
+                        new BufferedInputStream(new FileInputStream(part)))) {
+                    while (true) {
+                        int len;
+                        try {
+                            len = in.readInt();
+                        } catch (EOFException e) {
+                            break;
+                        }
+                        byte[] bytes = new byte[len];
+                        in.readFully(bytes);
+                        int doc = in.readInt();
+                        index.computeIfAbsent(new String(bytes, StandardCharsets.UTF_8),
+                                k -> new IntList()).add(doc);
+                    }
+                }
+                addPostings(index);
+                FileUtils.deleteQuietly(part);
+            }
+            spills = null;
+        } else {
+            addPostings(memIndex);
+            memIndex = null;
+        }
+        LOG.info("Documents : {}, Values : {}, Posting lists : {}, Skipped frequent values : {}",
+                ids.size(), numValues, postings.size(), numSkipped);
+    }
+
+    private void addPostings(Map<String, IntList> index) {
+        for (Map.Entry<String, IntList> entry : index.entrySet()) {
+            numValues++;
+            IntList docs = entry.getValue();
+            if (docs.size > maxDf) {
+                numSkipped++;
+                LOG.debug("Skipping '{}', it is in {} docs", entry.getKey(), docs.size);
+            } else if (docs.size > 1) {
+                // values of a single doc don't make any edges
+                postings.add(docs.toArray());
+            }
+        }
+    }
+
+    /**
+     * Writes the edges between the documents sharing at least one value.
+     * Like the join, an edge is written once in both the directions.
+     * @param sink the edge sink
+     * @return number of edges
+     * @throws IOException when the edges can't be written
+     */
+    public long writeEdges(EdgeSink sink) throws IOException {
+        build();
+        int numDocs = ids.size();
+        // forward index, doc -> posting lists, in compressed rows
+        int[] offsets = new int[numDocs + 1];
+        for (int[] docs : postings) {
+            for (int doc : docs) {
+                offsets[doc + 1]++;
+            }
+        }
+        for (int i = 0; i < numDocs; i++) {
+            offsets[i + 1] += offsets[i];
+        }
+        int[] lists = new int[offsets[numDocs]];
+        int[] fill = Arrays.copyOf(offsets, numDocs);
+        for (int p = 0; p < postings.size(); p++) {
+            for (int doc : postings.get(p)) {
+                lists[fill[doc]++] = p;
+            }
+        }
+
+        // last source doc which reached the target doc, to write each edge once
+        int[] seen = new int[numDocs];
+        Arrays.fill(seen, -1);
+        long edgeCount = 0;
+        long st = System.currentTimeMillis();
+        for (int src = 0; src < numDocs; src++) {
+            String srcId = ids.get(src);
+            for (int i = offsets[src]; i < offsets[src + 1]; i++) {
+                for (int dest : postings.get(lists[i])) {
+                    if (dest != src && seen[dest] != src) {
+                        seen[dest] = src;
+                        sink.addEdge(srcId, ids.get(dest));
+                        edgeCount++;
+                    }
+                }
+            }
+            if (System.currentTimeMillis() - st > DELAY) {
+                st = System.currentTimeMillis();
+                LOG.info("Vertices : {}/{}, Edges {}", src + 1, numDocs, edgeCount);
+            }
+        }
+        return edgeCount;
+    }
+
+    public int getNumDocs() {
+        return ids.size();
+    }
+
+    public long getNumSkipped() {
+        return numSkipped;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (spills != null) {
+            for (DataOutputStream spill : spills) {
+                spill.close();
+            }
+            spills = null;
+        }
+        if (spillDir != null) {
+            FileUtils.deleteDirectory(spillDir);
+            spillDir = null;
+        }
+    }
+
+    /**
+     * Growable list of ints, without boxing
+     */
+    private static class IntList {
+        private int[] items = new int[2];
+        private int size;
+
+        private void add(int item) {
+            if (size == items.length) {
+                items = Arrays.copyOf(items, size * 2);
+            }
+            items[size++] = item;
+        }
+
+        private int[] toArray() {
+            return Arrays.copyOf(items, size);
+        }
+    }
+}
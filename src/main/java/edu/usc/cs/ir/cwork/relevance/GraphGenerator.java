@@ -1,5 +1,8 @@
 package edu.usc.cs.ir.cwork.relevance;
 
+import edu.usc.cs.ir.cwork.graph.EdgeFile;
+import edu.usc.cs.ir.cwork.graph.EdgeSink;
+import edu.usc.cs.ir.cwork.solr.ParallelDocIterator;
 import edu.usc.cs.ir.cwork.solr.SolrDocIterator;
 import org.apache.commons.math3.util.Pair;
 import org.apache.solr.client.solrj.SolrServer;
@@ -17,7 +20,7 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.net.URL;
 import java.text.SimpleDateFormat;
-import java.util.Calendar;
+import java.util.Collection;
 import java.util.Date;
 
 /**
@@ -41,6 +44,17 @@ public class GraphGenerator {
         organizations;
     }
 
+    public enum Method {
+        /**
+         * Solr join query for each document
+         */
+        join,
+        /**
+         * Offline inverted index of field values
+         */
+        index
+    }
+
     @Option(name = "-solr", usage = "Solr URL to query docs", required = true)
     private URL solrUrl;
 
@@ -50,6 +64,26 @@ public class GraphGenerator {
     @Option(name = "-edge", usage = "Edge type. This should be a field in solr docs.", required = true)
     private EdgeType edgeType;
 
+    @Option(name = "-method", usage = "Method of finding edges. 'index' reads the docs once and" +
+            " builds an inverted index of field values, 'join' queries solr join for every doc")
+    private Method method = Method.index;
+
+    @Option(name = "-maxdf", usage = "Values shared by more than these many docs are skipped" +
+            " (index method only)")
+    private int maxDf = 10000;
+
+    @Option(name = "-partitions", usage = "Number of partitions of values spilled to disk;" +
+            " 1 keeps all the values in memory (index method only)")
+    private int numPartitions = 1;
+
+    @Option(name = "-format", usage = "Format of output file. 'text' has a tab separated edge per line," +
+            " 'binary' is a memory mappable edges file")
+    private EdgeFile.Format format = EdgeFile.Format.text;
+
+    @Option(name = "-slices", usage = "Number of id range slices of the docs fetched concurrently" +
+            " from solr (index method only)")
+    private int numSlices = 1;
+
 
     public static final String RANGE_QRY = "[%s TO %s]";
     public static final String SOLR_DATE_FMT = "YYYY-MM-dd'T'HH:mm:ss.SSS'Z'";
@@ -62,56 +96,110 @@ public class GraphGenerator {
     }
 
     /**
-     * Generates sequence of edges by querying and joining docs in solr
+     * Generates sequence of edges
      * @return number of edges
      * @throws IOException
      */
     private long generate() throws IOException {
-
-        String field = edgeType.name();
-        long edgeCount = 0;
-        long vertexCount = 0;
-        long st = System.currentTimeMillis();
         SolrServer solr = new HttpSolrServer(solrUrl.toString());
+        try {
+            if (format == EdgeFile.Format.binary) {
+                try (EdgeFile.Writer writer = new EdgeFile.Writer(outputFile)) {
+                    return generate(solr, writer);
+                }
+            }
+            try (BufferedWriter writer = new BufferedWriter(new FileWriter(outputFile))) {
+                return generate(solr, (id1, id2) -> writer.write(id1 + "\t" + id2 + "\n"));
+            }
+        } finally {
+            solr.shutdown();
+        }
+    }
 
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(outputFile))){
-            String idField = "id";
+    private long generate(SolrServer solr, EdgeSink sink) throws IOException {
+        return method == Method.join ? generateByJoin(solr, sink) : generateByIndex(solr, sink);
+    }
 
-            String fieldValueJoin = "{!join from="+ field +" to=" + field + "}";
-            // for each doc that has locations
-            SolrDocIterator iterator = new SolrDocIterator(solr, field + ":*", idField);
-            while (iterator.hasNext()){
+    /**
+     * Generates sequence of edges by reading the field values of all docs once and
+     * expanding the inverted index of values
+     * @param solr solr server
+     * @param sink sink for the edges
+     * @return number of edges
+     * @throws IOException
+     */
+    private long generateByIndex(SolrServer solr, EdgeSink sink) throws IOException {
+        String field = edgeType.name();
+        String idField = "id";
+        long st = System.currentTimeMillis();
+        try (EdgeIndex index = new EdgeIndex(maxDf, numPartitions);
+             ParallelDocIterator iterator = new ParallelDocIterator(solr, field + ":*",
+                     SolrDocIterator.DEF_START, SolrDocIterator.DEF_ROWS, numSlices, 2, idField, field)) {
+            while (iterator.hasNext()) {
                 SolrDocument doc = iterator.next();
-                String id1 = (String) doc.getFieldValue(idField);
-
-                // join with other docs that has same edge field
-                String joinQuery = fieldValueJoin + idField +  ":\"" + id1 + "\"";
-
-                //get connected docs
-                SolrDocIterator connectedDocs = new SolrDocIterator(solr, joinQuery, idField);
-                while (connectedDocs.hasNext()) {
-                    SolrDocument doc2 = connectedDocs.next();
-                    String id2 = (String) doc2.get(idField);
-                    if (id1.equals(id2)) {
-                        continue; //skip
-                    }
-                    //draw an edge
-                    writer.write(id1 + "\t" + id2 + "\n");
-                    edgeCount++;
+                Collection<Object> values = doc.getFieldValues(field);
+                if (values != null) {
+                    index.add((String) doc.getFieldValue(idField), values);
                 }
-                vertexCount++;
                 if (System.currentTimeMillis() - st > DELAY) {
                     st = System.currentTimeMillis();
-                    LOG.info("Vertices : {}, Edges {}", vertexCount, edgeCount);
+                    LOG.info("Indexed docs : {}/{}", index.getNumDocs(), iterator.getNumFound());
                 }
             }
+            return index.writeEdges(sink);
+        }
+    }
+
+    /**
+     * Generates sequence of edges by querying and joining docs in solr
+     * @param solr solr server
+     * @param sink sink for the edges
+     * @return number of edges
+     * @throws IOException
+     */
+    private long generateByJoin(SolrServer solr, EdgeSink sink) throws IOException {
+
+        String field = edgeType.name();
+        long edgeCount = 0;
+        long vertexCount = 0;
+        long st = System.currentTimeMillis();
+        String idField = "id";
+
+        String fieldValueJoin = "{!join from="+ field +" to=" + field + "}";
+        // for each doc that has locations
+        SolrDocIterator iterator = new SolrDocIterator(solr, field + ":*",
+                SolrDocIterator.DEF_START, SolrDocIterator.DEF_ROWS, true, idField);
+        while (iterator.hasNext()){
+            SolrDocument doc = iterator.next();
+            String id1 = (String) doc.getFieldValue(idField);
+
+            // join with other docs that has same edge field
+            String joinQuery = fieldValueJoin + idField +  ":\"" + id1 + "\"";
+
+            //get connected docs
+            SolrDocIterator connectedDocs = new SolrDocIterator(solr, joinQuery, idField);
+            while (connectedDocs.hasNext()) {
+                SolrDocument doc2 = connectedDocs.next();
+                String id2 = (String) doc2.get(idField);
+                if (id1.equals(id2)) {
+                    continue; //skip
+                }
+                //draw an edge
+                sink.addEdge(id1, id2);
+                edgeCount++;
+            }
+            vertexCount++;
+            if (System.currentTimeMillis() - st > DELAY) {
+                st = System.currentTimeMillis();
+                LOG.info("Vertices : {}, Edges {}", vertexCount, edgeCount);
+            }
         }
         return edgeCount;
     }
 
     public static void main(String[] args) throws IOException {
        //args = "-solr http://localhost:8983/solr/ -out locations.txt -edge locations".split(" ");
-       args = "-solr http://localhost:8983/solr/ -out dates.txt -edge dates".split(" ");
+       //args = "-solr http://localhost:8983/solr/ -out dates.txt -edge dates".split(" ");
 
         GraphGenerator graphGen = new GraphGenerator();
         CmdLineParser parser = new CmdLineParser(graphGen);
@@ -122,7 +210,6 @@ public class GraphGenerator {
             parser.printUsage(System.err);
             return;
         }
-        graphGen.generate();
         long edgeCount = graphGen.generate();
         System.out.println("Total Edges : " + edgeCount);
 
@@ -1,5 +1,6 @@
 package edu.usc.cs.ir.cwork.relevance;
 
+import edu.usc.cs.ir.cwork.graph.CompactGraph;
 import edu.usc.cs.ir.cwork.graph.Graph;
 import edu.usc.cs.ir.cwork.graph.Vertex;
 import org.slf4j.Logger;
@@ -61,6 +62,56 @@ public class PageRanker {
         }
     }
 
+    /**
+     * Computes page rank of compact graph. The scores are updated in place, and nothing is
+     * allocated in the iterations.
+     * @param graph the graph
+     * @param numIterations number of iterations
+     * @param dampingFactor damping factor
+     */
+    public void rank(CompactGraph graph, int numIterations, double dampingFactor) {
+        int n = graph.getNumVertices();
+        int[] offsets = graph.getOffsets();
+        int[] sources = graph.getSources();
+        int[] outDegrees = graph.getOutDegrees();
+        double[] scores = graph.getScores();
+        // contribution of each vertex to its neighbours, score / out degree
+        double[] contribs = new double[n];
+
+        double baseLine = (1 - dampingFactor)/n;
+
+        long st = System.currentTimeMillis();
+        int delay = 2 * 1000;
+        for (int iteration = 0; iteration < numIterations; iteration++) {
+            for (int v = 0; v < n; v++) {
+                contribs[v] = outDegrees[v] > 0 ? scores[v] / outDegrees[v] : 0.0;
+            }
+            for (int v = 0; v < n; v++) {
+                double sum = 0.0;
+                for (int i = offsets[v]; i < offsets[v + 1]; i++) {
+                    sum += contribs[sources[i]];
+                }
+                scores[v] = baseLine + dampingFactor * sum;
+                if (System.currentTimeMillis() - st > delay) {
+                    LOG.info("Iteration {} of {}, vertex {} of {}", iteration,
+                            numIterations, v, n);
+                    st = System.currentTimeMillis();
+                }
+            }
+            if (debug) {
+                System.out.println("\nIteration " + iteration + " complete.");
+                printPageRanks(graph);
+            }
+        }
+    }
+
+    public void printPageRanks(CompactGraph graph) {
+        double[] scores = graph.getScores();
+        for (int v = 0; v < scores.length; v++) {
+            System.out.println(graph.getId(v) + " : " + scores[v]);
+        }
+    }
+
     public void printPageRanks(Graph graph) {
         Set<Vertex> vertices = graph.getVertices();
         for (Vertex vertice : vertices) {
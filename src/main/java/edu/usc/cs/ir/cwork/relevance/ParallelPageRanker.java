@@ -0,0 +1,242 @@
+package edu.usc.cs.ir.cwork.relevance;
+
+import edu.usc.cs.ir.cwork.graph.CompactGraph;
+import org.kohsuke.args4j.CmdLineException;
+import org.kohsuke.args4j.CmdLineParser;
+import org.kohsuke.args4j.Option;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Computes page rank of {@link CompactGraph} with multiple threads.
+ * The vertices are split into slices having about the same number of edges, and the slices
+ * are ranked in a fork join pool. The scores are double buffered, so the threads read the
+ * scores of the last iteration and write the scores of the next without any locks.
+ * The iterations stop when the L1 distance between the scores of two iterations is below
+ * the tolerance. The score of dangling vertices, i.e. vertices without outgoing edges, is
+ * spread evenly over all the vertices, so the scores always add up to one.
+ */
+public class ParallelPageRanker {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ParallelPageRanker.class);
+
+    /**
+     * Number of slices per thread, a few more than one balances the uneven slices
+     */
+    public static final int SLICES_PER_THREAD = 4;
+
+    @Option(name = "-edges", required = true, usage = "Path to file having graph's edges")
+    private File edgesFile;
+
+    @Option(name = "-out", required = true, usage = "Path to Output file for storing page ranks")
+    private File outFile;
+
+    @Option(name = "-n", usage = "Max number of iterations")
+    private int maxIterations = 100;
+
+    @Option(name = "-t", usage = "Number of Threads")
+    private int numThreads = Runtime.getRuntime().availableProcessors();
+
+    @Option(name = "-tol", usage = "Tolerance; stops when L1 distance of scores of two iterations is below this")
+    private double tolerance = 1e-6;
+
+    @Option(name = "-d", usage = "Damping factor")
+    private double dampingFactor = 0.85;
+
+    private int numIterations;
+    private double delta;
+
+    public ParallelPageRanker() {
+    }
+
+    /**
+     * Creates a ranker
+     * @param numThreads number of threads
+     * @param maxIterations max number of iterations
+     * @param tolerance tolerance of L1 distance between scores of two iterations
+     * @param dampingFactor damping factor
+     */
+    public ParallelPageRanker(int numThreads, int maxIterations, double tolerance, double dampingFactor) {
+        this.numThreads = numThreads;
+        this.maxIterations = maxIterations;
+        this.tolerance = tolerance;
+        this.dampingFactor = dampingFactor;
+    }
+
+    /**
+     * A range of vertices
+     */
+    private static class Slice {
+        private final int start;
+        private final int end;
+
+        private Slice(int start, int end) {
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    /**
+     * Splits the vertices to slices having about the same number of edges and vertices
+     * @param offsets offsets of edges in the graph
+     * @param numSlices number of slices
+     * @return slices
+     */
+    private static List<Slice> slice(int[] offsets, int numSlices) {
+        int n = offsets.length - 1;
+        long total = (long) offsets[n] + n;
+        List<Slice> slices = new ArrayList<>();
+        int start = 0;
+        for (int s = 1; s <= numSlices && start < n; s++) {
+            long target = total * s / numSlices;
+            int end = start + 1;
+            while (end < n && (long) offsets[end] + end < target) {
+                end++;
+            }
+            if (s == numSlices) {
+                end = n;
+            }
+            slices.add(new Slice(start, end));
+            start = end;
+        }
+        return slices;
+    }
+
+    /**
+     * Computes the page rank. The scores of graph are used as the initial scores, and
+     * they are replaced by the ranks.
+     * @param graph the graph
+     * @return number of iterations run
+     */
+    public int rank(CompactGraph graph) {
+        int n = graph.getNumVertices();
+        if (n == 0) {
+            return 0;
+        }
+        int[] offsets = graph.getOffsets();
+        int[] sources = graph.getSources();
+        int[] outDegrees = graph.getOutDegrees();
+        double[][] buffers = {graph.getScores(), new double[n]};
+        double[] contribs = new double[n];
+        double baseLine = (1 - dampingFactor) / n;
+
+        List<Slice> slices = slice(offsets, Math.max(1, numThreads * SLICES_PER_THREAD));
+        ForkJoinPool pool = new ForkJoinPool(numThreads);
+        int cur = 0;
+        try {
+            List<Callable<Double>> contribTasks = new ArrayList<>();
+            List<Callable<Double>> rankTasks = new ArrayList<>();
+            int[] curBuf = new int[1];
+            double[] danglingShare = new double[1];
+            for (Slice slice : slices) {
+                // contributions of vertices to their neighbours, returns the dangling score
+                contribTasks.add(() -> {
+                    double[] scores = buffers[curBuf[0]];
+                    double dangling = 0.0;
+                    for (int v = slice.start; v < slice.end; v++) {
+                        if (outDegrees[v] > 0) {
+                            contribs[v] = scores[v] / outDegrees[v];
+                        } else {
+                            contribs[v] = 0.0;
+                            dangling += scores[v];
+                        }
+                    }
+                    return dangling;
+                });
+                // new scores from the contributions, returns the L1 distance
+                rankTasks.add(() -> {
+                    double[] scores = buffers[curBuf[0]];
+                    double[] next = buffers[1 - curBuf[0]];
+                    double base = baseLine + danglingShare[0];
+                    double dist = 0.0;
+                    for (int v = slice.start; v < slice.end; v++) {
+                        double sum = 0.0;
+                        for (int i = offsets[v]; i < offsets[v + 1]; i++) {
+                            sum += contribs[sources[i]];
+                        }
+                        next[v] = base + dampingFactor * sum;
+                        dist += Math.abs(next[v] - scores[v]);
+                    }
+                    return dist;
+                });
+            }
+
+            long st = System.currentTimeMillis();
+            numIterations = 0;
+            delta = Double.MAX_VALUE;
+            while (numIterations < maxIterations && delta >= tolerance) {
+                curBuf[0] = cur;
+                danglingShare[0] = dampingFactor * sum(pool.invokeAll(contribTasks)) / n;
+                delta = sum(pool.invokeAll(rankTasks));
+                cur = 1 - cur;
+                numIterations++;
+                if (System.currentTimeMillis() - st > 2000) {
+                    st = System.currentTimeMillis();
+                    LOG.info("Iteration {}, L1 delta {}", numIterations, delta);
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+        if (cur != 0) {
+            System.arraycopy(buffers[cur], 0, buffers[0], 0, n);
+        }
+        LOG.info("Ranked {} vertices in {} iterations, L1 delta {}", n, numIterations, delta);
+        return numIterations;
+    }
+
+    private static double sum(List<Future<Double>> futures) {
+        double sum = 0.0;
+        try {
+            for (Future<Double> future : futures) {
+                sum += future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+        return sum;
+    }
+
+    public int getNumIterations() {
+        return numIterations;
+    }
+
+    public double getDelta() {
+        return delta;
+    }
+
+    public static void main(String[] args) throws IOException {
+        ParallelPageRanker ranker = new ParallelPageRanker();
+        CmdLineParser parser = new CmdLineParser(ranker);
+        try {
+            parser.parseArgument(args);
+        } catch (CmdLineException e) {
+            System.err.println(e.getLocalizedMessage());
+            parser.printUsage(System.err);
+            return;
+        }
+
+        CompactGraph graph = CompactGraph.load(ranker.edgesFile);
+        ranker.rank(graph);
+        double[] scores = graph.getScores();
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(ranker.outFile))) {
+            for (int v = 0; v < scores.length; v++) {
+                writer.write(graph.getId(v) + "\t" + scores[v] + '\n');
+            }
+        }
+    }
+}
@@ -7,7 +7,9 @@ import org.kohsuke.args4j.Option;
 import scala.Tuple2;
 
 import com.google.common.collect.Iterables;
+import com.google.common.hash.Hashing;
 
+import org.apache.spark.HashPartitioner;
 import org.apache.spark.SparkConf;
 import org.apache.spark.api.java.JavaPairRDD;
 import org.apache.spark.api.java.JavaRDD;
@@ -16,6 +18,7 @@ import org.apache.spark.api.java.function.Function2;
 import org.apache.spark.api.java.function.PairFlatMapFunction;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Iterator;
@@ -32,6 +35,11 @@ import java.util.regex.Pattern;
  *
  * This is an example implementation for learning how to use Spark. For more conventional use,
  * please refer to org.apache.spark.graphx.lib.PageRank
+ *
+ * In the hashed mode (-hashed), the URLs are hashed to longs once, and the links and ranks
+ * are partitioned by the same partitioner, so the join of every iteration doesn't shuffle;
+ * only the contributions, as pairs of long and double, are shuffled. The lineage is cut
+ * by checkpointing the ranks every few iterations. The URLs are joined back at the end.
  */
 public final class SparkPageRanker implements Closeable {
 
@@ -58,19 +66,46 @@ public final class SparkPageRanker implements Closeable {
     @Option(name = "-t",  usage = "Number of Threads")
     private int numThreads = 2;
 
+    @Option(name = "-master", usage = "Spark master URL (default: local[N] where N is number of threads)")
+    private String master;
+
+    @Option(name = "-d", usage = "Damping factor")
+    private double dampingFactor = 0.85;
+
+    @Option(name = "-tol", usage = "Tolerance; stops when L1 distance of ranks of two iterations is" +
+            " below this, 0 runs all the iterations (hashed mode only)")
+    private double tolerance = 0.0;
+
+    @Option(name = "-hashed", usage = "Hash the URLs to longs and co-partition links and ranks")
+    private boolean hashed = false;
+
+    @Option(name = "-p", usage = "Number of partitions (hashed mode only, default: number of threads)")
+    private int numPartitions = -1;
+
+    @Option(name = "-checkpoint", usage = "Checkpoint the ranks every these many iterations," +
+            " 0 disables (hashed mode only)")
+    private int checkpointInterval = 10;
+
+    @Option(name = "-checkpointdir", usage = "Directory for checkpoints (hashed mode only)")
+    private String checkpointDir = System.getProperty("java.io.tmpdir") + "/pagerank-checkpoints";
+
 
     private JavaSparkContext spCtx;
 
 
     public void init(){
         SparkConf sparkConf = new SparkConf()
-                .setMaster(String.format("local[%d]", numThreads))
+                .setMaster(master != null ? master : String.format("local[%d]", numThreads))
                 .setAppName("Page-Ranker");
         spCtx = new JavaSparkContext(sparkConf);
     }
 
 
     public JavaPairRDD<String, Double> run(){
+        if (hashed) {
+            return runHashed();
+        }
+        double damping = dampingFactor; // the closures shouldn't capture this
 
         // Loads in input file. It should be in format of:
         //     URL         neighbor URL
@@ -106,12 +141,98 @@ public final class SparkPageRanker implements Closeable {
 
             // Re-calculates URL ranks based on neighbor contributions.
             ranks = contribs.reduceByKey(sumFunc)
-                    .mapValues(sum -> 0.15 + sum * 0.85);
+                    .mapValues(sum -> (1 - damping) + sum * damping);
         }
 
         return ranks;
     }
 
+    /**
+     * Hashes the URL to long
+     * @param url the url
+     * @return 64 bit hash of url
+     */
+    private static long hash(String url) {
+        return Hashing.murmur3_128().hashString(url, StandardCharsets.UTF_8).asLong();
+    }
+
+    /**
+     * Computes page rank on hashed URLs
+     * @return ranks of URLs
+     */
+    public JavaPairRDD<String, Double> runHashed() {
+        int partitions = numPartitions > 0 ? numPartitions : numThreads;
+        HashPartitioner partitioner = new HashPartitioner(partitions);
+        double damping = dampingFactor;
+        if (checkpointInterval > 0) {
+            spCtx.setCheckpointDir(checkpointDir);
+        }
+
+        JavaRDD<String> lines = spCtx.textFile(edgesFile.getPath(), partitions);
+
+        // hash of URL -> outgoing links
+        JavaPairRDD<Long, long[]> links = lines
+                .mapToPair(s -> {
+                    String[] parts = SPACES.split(s);
+                    return new Tuple2<>(hash(parts[0]), hash(parts[1]));
+                }).distinct(partitions)
+                .groupByKey(partitioner)
+                .mapValues(dests -> {
+                    long[] array = new long[Iterables.size(dests)];
+                    int i = 0;
+                    for (Long dest : dests) {
+                        array[i++] = dest;
+                    }
+                    return array;
+                }).cache();
+
+        // mapValues keeps the partitioner, so the join of links and ranks is local
+        JavaPairRDD<Long, Double> ranks = links.mapValues(rs -> 1.0);
+
+        for (int i = 0; i < numIterations; i++) {
+            JavaPairRDD<Long, Double> contribs = links.join(ranks).values()
+                    .flatMapToPair((PairFlatMapFunction<Tuple2<long[], Double>, Long, Double>) s -> {
+                        List<Tuple2<Long, Double>> results = new ArrayList<>(s._1().length);
+                        double contrib = s._2() / s._1().length;
+                        for (long n : s._1()) {
+                            results.add(new Tuple2<>(n, contrib));
+                        }
+                        return results;
+                    });
+            JavaPairRDD<Long, Double> newRanks = contribs.reduceByKey(partitioner, sumFunc)
+                    .mapValues(sum -> (1 - damping) + sum * damping)
+                    .cache();
+            if (checkpointInterval > 0 && (i + 1) % checkpointInterval == 0) {
+                newRanks.checkpoint();
+            }
+            if (tolerance > 0) {
+                double delta = newRanks.join(ranks).values()
+                        .map(pair -> Math.abs(pair._1() - pair._2()))
+                        .fold(0.0, sumFunc);
+                if (delta < tolerance) {
+                    ranks.unpersist();
+                    ranks = newRanks;
+                    break;
+                }
+            } else {
+                newRanks.count(); // materializes before the old ranks are dropped
+            }
+            ranks.unpersist();
+            ranks = newRanks;
+        }
+
+        // hash -> URL, partitioned like the ranks
+        JavaPairRDD<Long, String> urls = lines
+                .flatMapToPair((PairFlatMapFunction<String, Long, String>) s -> {
+                    List<Tuple2<Long, String>> results = new ArrayList<>(2);
+                    for (String url : SPACES.split(s)) {
+                        results.add(new Tuple2<>(hash(url), url));
+                    }
+                    return results;
+                }).reduceByKey(partitioner, (a, b) -> a);
+        return urls.join(ranks).mapToPair(pair -> pair._2());
+    }
+
 
     @Override
     public void close() throws IOException {
@@ -0,0 +1,297 @@
+package edu.usc.cs.ir.cwork.solr;
+
+import org.apache.solr.client.solrj.SolrServer;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.SolrInputField;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Buffers documents and posts them to solr in batches.
+ * A batch is posted when it reaches the document limit, the estimated size limit or the
+ * age limit, whichever comes first. The age is checked when documents are added, and the
+ * last batch is posted on {@link #close()}.
+ * The document limit adapts to the response time of solr: it is halved when a batch takes
+ * longer than the target latency, and it grows back up to the max when batches are fast.
+ *
+ * The limits are taken from these system properties :
+ * <pre>
+ *     solr.batch.maxmb   : max estimated size of batch in megabytes (default: 10)
+ *     solr.batch.maxage  : max millis a document waits in batch (default: 30000)
+ *     solr.batch.latency : target response time of a batch in millis (default: 5000)
+ * </pre>
+ * The failed batches are handed over to {@link FailureHandler}. When documents can neither be
+ * posted nor written to dead letters, and there is no listener to handle them, the poster
+ * throws {@link IllegalStateException} instead of dropping them.
+ * This class is not thread safe; each posting thread should have its own poster.
+ */
+public class BatchPoster implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BatchPoster.class);
+
+    /**
+     * Gets notified after a batch is posted
+     */
+    public interface Listener {
+        /**
+         * @param done tags of documents which are done : posted, or rejected and written
+         *             to dead letters
+         * @param lost tags of documents which couldn't be posted nor written to dead letters
+         * @param numFailed number of documents which couldn't be posted
+         */
+        void onPosted(List<Long> done, List<Long> lost, long numFailed);
+    }
+
+    private final SolrServer solr;
+    private final int maxDocs;
+    private final long maxBytes;
+    private final long maxAge;
+    private final long targetLatency;
+    private final Listener listener;
+    private FailureHandler failureHandler;
+
+    private int docLimit;
+    private List<SolrInputDocument> batch = new ArrayList<>();
+    private List<Long> tags = new ArrayList<>();
+    private long batchBytes;
+    private long batchStartTime;
+
+    private long numPosted;
+    private long numFailed;
+    private long numBatches;
+
+    /**
+     * Creates a poster having limits from system properties
+     * @param solr solr server
+     * @param maxDocs max number of documents in a batch
+     * @param listener listener for posted batches, which handles the lost documents. When null,
+     *                 the poster throws when documents are lost
+     * @return batch poster
+     */
+    public static BatchPoster create(SolrServer solr, int maxDocs, Listener listener) {
+        return new BatchPoster(solr, maxDocs,
+                Long.getLong("solr.batch.maxmb", 10L) * 1024 * 1024,
+                Long.getLong("solr.batch.maxage", 30 * 1000L),
+                Long.getLong("solr.batch.latency", 5 * 1000L), listener);
+    }
+
+    /**
+     * Creates a poster
+     * @param solr solr server
+     * @param maxDocs max number of documents in a batch
+     * @param maxBytes max estimated size of a batch
+     * @param maxAge max millis a document waits in the batch
+     * @param targetLatency target response time of a batch in millis
+     * @param listener listener for posted batches, which handles the lost documents. When null,
+     *                 the poster throws when documents are lost
+     */
+    public BatchPoster(SolrServer solr, int maxDocs, long maxBytes, long maxAge,
+                       long targetLatency, Listener listener) {
+        this.solr = solr;
+        this.maxDocs = maxDocs;
+        this.maxBytes = maxBytes;
+        this.maxAge = maxAge;
+        this.targetLatency = targetLatency;
+        this.listener = listener;
+        this.docLimit = maxDocs;
+        this.failureHandler = FailureHandler.create(solr);
+    }
+
+    /**
+     * Sets the handler for failed batches
+     * @param failureHandler the failure handler
+     */
+    public void setFailureHandler(FailureHandler failureHandler) {
+        this.failureHandler = failureHandler;
+    }
+
+    /**
+     * Adds a document
+     * @param doc the document
+     */
+    public void add(SolrInputDocument doc) {
+        add(doc, -1);
+    }
+
+    /**
+     * Adds a document
+     * @param doc the document
+     * @param tag tag to identify the document in {@link Listener}
+     */
+    public void add(SolrInputDocument doc, long tag) {
+        if (batch.isEmpty()) {
+            batchStartTime = System.currentTimeMillis();
+        }
+        batch.add(doc);
+        tags.add(tag);
+        batchBytes += estimateBytes(doc);
+        if (batch.size() >= docLimit || batchBytes >= maxBytes
+                || System.currentTimeMillis() - batchStartTime >= maxAge) {
+            flush();
+        }
+    }
+
+    /**
+     * Adds a solrj bean
+     * @param bean the bean having {@link org.apache.solr.client.solrj.beans.Field} annotations
+     * @param tag tag to identify the document in {@link Listener}
+     */
+    public void addBean(Object bean, long tag) {
+        add(solr.getBinder().toSolrInputDocument(bean), tag);
+    }
+
+    /**
+     * Adds a solrj bean
+     * @param bean the bean having {@link org.apache.solr.client.solrj.beans.Field} annotations
+     */
+    public void addBean(Object bean) {
+        addBean(bean, -1);
+    }
+
+    /**
+     * Posts the current batch
+     */
+    public void flush() {
+        if (batch.isEmpty()) {
+            return;
+        }
+        List<SolrInputDocument> docs = batch;
+        List<Long> docTags = tags;
+        batch = new ArrayList<>();
+        tags = new ArrayList<>();
+        batchBytes = 0;
+
+        long failed = 0;
+        List<SolrInputDocument> lost = new ArrayList<>();
+        long st = System.currentTimeMillis();
+        try {
+            solr.add(docs);
+        } catch (Exception e) {
+            LOG.warn("Batch of {} docs failed : {}", docs.size(), e.getMessage());
+            failed = failureHandler.recover(docs, e, lost);
+        }
+        adapt(docs.size(), System.currentTimeMillis() - st);
+        numBatches++;
+        numPosted += docs.size() - failed;
+        numFailed += failed;
+        if (listener == null) {
+            if (!lost.isEmpty()) {
+                throw new IllegalStateException(lost.size() + " docs couldn't be posted to solr,"
+                        + " nor written to dead letters (-Dsolr.deadletters)");
+            }
+        } else if (lost.isEmpty()) {
+            listener.onPosted(docTags, Collections.emptyList(), failed);
+        } else {
+            // split the tags, the lost docs are the same instances as the batch docs
+            Map<SolrInputDocument, Boolean> lostDocs = new IdentityHashMap<>();
+            for (SolrInputDocument doc : lost) {
+                lostDocs.put(doc, true);
+            }
+            List<Long> doneTags = new ArrayList<>();
+            List<Long> lostTags = new ArrayList<>();
+            for (int i = 0; i < docs.size(); i++) {
+                (lostDocs.containsKey(docs.get(i)) ? lostTags : doneTags).add(docTags.get(i));
+            }
+            listener.onPosted(doneTags, lostTags, failed);
+        }
+    }
+
+    /**
+     * Adapts the document limit to the latency of solr
+     * @param batchSize number of documents in the last batch
+     * @param latency response time of the last batch
+     */
+    private void adapt(int batchSize, long latency) {
+        int limit = docLimit;
+        if (latency > targetLatency && batchSize > 1) {
+            limit = Math.max(1, Math.min(docLimit, batchSize) / 2);
+        } else if (latency < targetLatency / 2 && batchSize >= docLimit) {
+            limit = Math.min(maxDocs, docLimit + Math.max(1, docLimit / 4));
+        }
+        if (limit != docLimit) {
+            LOG.info("Batch of {} docs took {}ms. Batch size : {} -> {}",
+                    batchSize, latency, docLimit, limit);
+            docLimit = limit;
+        }
+    }
+
+    /**
+     * Estimates the serialized size of document
+     * @param doc the document
+     * @return approximate number of bytes
+     */
+    public static long estimateBytes(SolrInputDocument doc) {
+        long bytes = 0;
+        for (SolrInputField field : doc) {
+            bytes += field.getName().length();
+            Collection<Object> values = field.getValues();
+            if (values != null) {
+                for (Object value : values) {
+                    bytes += estimateBytes(value);
+                }
+            }
+        }
+        return bytes;
+    }
+
+    private static long estimateBytes(Object value) {
+        if (value == null) {
+            return 0;
+        } else if (value instanceof CharSequence) {
+            return ((CharSequence) value).length();
+        } else if (value instanceof Collection) {
+            long bytes = 0;
+            for (Object item : (Collection<?>) value) {
+                bytes += estimateBytes(item);
+            }
+            return bytes;
+        } else if (value instanceof Object[]) {
+            long bytes = 0;
+            for (Object item : (Object[]) value) {
+                bytes += estimateBytes(item);
+            }
+            return bytes;
+        } else if (value instanceof Map) { // atomic updates
+            long bytes = 0;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                bytes += estimateBytes(entry.getKey()) + estimateBytes(entry.getValue());
+            }
+            return bytes;
+        } else if (value instanceof byte[]) {
+            return ((byte[]) value).length;
+        }
+        return 16; // numbers, dates
+    }
+
+    public int getDocLimit() {
+        return docLimit;
+    }
+
+    public long getNumPosted() {
+        return numPosted;
+    }
+
+    public long getNumFailed() {
+        return numFailed;
+    }
+
+    public long getNumBatches() {
+        return numBatches;
+    }
+
+    /**
+     * Posts the last batch
+     */
+    @Override
+    public void close() {
+        flush();
+    }
+}
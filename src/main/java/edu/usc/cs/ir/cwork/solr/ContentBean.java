@@ -60,6 +60,8 @@ public class ContentBean {
     @Field private Set<String> outlinks;
     @Field private Set<String> outpaths;
 
+    @Field private String digest;
+
     private Date fetchTime;
     private String rawContent;
 
@@ -235,5 +237,12 @@ public class ContentBean {
     public void setRawContent(String rawContent) {
         this.rawContent = rawContent;
     }
-}
 
+    public String getDigest() {
+        return digest;
+    }
+
+    public void setDigest(String digest) {
+        this.digest = digest;
+    }
+}
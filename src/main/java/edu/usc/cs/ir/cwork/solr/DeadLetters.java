@@ -0,0 +1,229 @@
+package edu.usc.cs.ir.cwork.solr;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.LineIterator;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.impl.HttpSolrServer;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.SolrInputField;
+import org.kohsuke.args4j.CmdLineException;
+import org.kohsuke.args4j.CmdLineParser;
+import org.kohsuke.args4j.Option;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Documents which were rejected by solr, stored for later replay.
+ * The file has one JSON object per line : {"error": "..", "doc": {"field": value, ..}}
+ * Dates are stored in ISO-8601 format, and atomic updates are stored as they are.
+ *
+ * This class also offers the CLI for replaying the dead letters to solr.
+ */
+public class DeadLetters {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DeadLetters.class);
+    private static final Map<String, DeadLetters> INSTANCES = new ConcurrentHashMap<>();
+    private static final Gson GSON = new Gson();
+
+    @Option(name = "-in", usage = "Dead letters file", required = true)
+    private File file;
+
+    @Option(name = "-solr", usage = "Solr URL", required = true)
+    private URL solrUrl;
+
+    @Option(name = "-batch", usage = "Batch size")
+    private int batchSize = 100;
+
+    @Option(name = "-out", usage = "Dead letters file for the documents rejected again. Must not be the -in file")
+    private File outFile;
+
+    private long count;
+
+    private DeadLetters() {
+    }
+
+    private DeadLetters(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Gets the dead letters of file. All the writers of a file share the same instance.
+     * @param file dead letters file
+     * @return dead letters
+     */
+    public static DeadLetters get(File file) {
+        return INSTANCES.computeIfAbsent(file.getAbsolutePath(), path -> new DeadLetters(file));
+    }
+
+    /**
+     * Appends the documents to dead letters
+     * @param docs rejected documents
+     * @param error the reason for rejection
+     * @return true when the documents are durably written, false when the file couldn't be written
+     */
+    public synchronized boolean write(List<SolrInputDocument> docs, String error) {
+        try (FileOutputStream stream = new FileOutputStream(file, true)) {
+            Writer writer = new OutputStreamWriter(stream, StandardCharsets.UTF_8);
+            for (SolrInputDocument doc : docs) {
+                JsonObject letter = new JsonObject();
+                letter.addProperty("error", error);
+                letter.add("doc", toJson(doc));
+                writer.write(letter.toString());
+                writer.write("\n");
+                count++;
+            }
+            writer.flush();
+            // the records of these docs are acknowledged as done after this
+            stream.getFD().sync();
+        } catch (IOException e) {
+            LOG.error("Couldn't write {} dead letters to {} : {}", docs.size(), file, e.getMessage());
+            return false;
+        }
+        return true;
+    }
+
+    private static JsonElement toJson(SolrInputDocument doc) {
+        Map<String, Object> fields = new LinkedHashMap<>();
+        for (SolrInputField field : doc) {
+            Collection<Object> values = field.getValues();
+            Object value = values.size() == 1 ? values.iterator().next() : values;
+            fields.put(field.getName(), toJsonValue(value));
+        }
+        return GSON.toJsonTree(fields);
+    }
+
+    private static Object toJsonValue(Object value) {
+        if (value instanceof Date) {
+            return ((Date) value).toInstant().toString();
+        } else if (value instanceof Collection) {
+            List<Object> list = new ArrayList<>();
+            for (Object item : (Collection<?>) value) {
+                list.add(toJsonValue(item));
+            }
+            return list;
+        } else if (value instanceof Object[]) {
+            List<Object> list = new ArrayList<>();
+            for (Object item : (Object[]) value) {
+                list.add(toJsonValue(item));
+            }
+            return list;
+        } else if (value instanceof Map) {
+            Map<Object, Object> map = new LinkedHashMap<>();
+            ((Map<?, ?>) value).forEach((k, v) -> map.put(k, toJsonValue(v)));
+            return map;
+        }
+        return value;
+    }
+
+    /**
+     * Reads a document from dead letter
+     * @param line a line of dead letters file
+     * @return the document
+     */
+    public static SolrInputDocument readDoc(String line) {
+        JsonObject letter = GSON.fromJson(line, JsonObject.class);
+        SolrInputDocument doc = new SolrInputDocument();
+        for (Map.Entry<String, JsonElement> field : letter.getAsJsonObject("doc").entrySet()) {
+            doc.setField(field.getKey(), fromJson(field.getValue()));
+        }
+        return doc;
+    }
+
+    private static Object fromJson(JsonElement element) {
+        if (element.isJsonArray()) {
+            List<Object> list = new ArrayList<>();
+            for (JsonElement item : element.getAsJsonArray()) {
+                list.add(fromJson(item));
+            }
+            return list;
+        } else if (element.isJsonObject()) {
+            Map<String, Object> map = new LinkedHashMap<>();
+            for (Map.Entry<String, JsonElement> entry : element.getAsJsonObject().entrySet()) {
+                map.put(entry.getKey(), fromJson(entry.getValue()));
+            }
+            return map;
+        } else if (element.isJsonNull()) {
+            return null;
+        } else if (element.getAsJsonPrimitive().isBoolean()) {
+            return element.getAsBoolean();
+        }
+        // numbers are kept as they were written, solr converts them to the field type
+        return element.getAsString();
+    }
+
+    /**
+     * @return number of dead letters written by this instance
+     */
+    public synchronized long getCount() {
+        return count;
+    }
+
+    /**
+     * Posts the dead letters to solr
+     * @throws IOException
+     * @throws SolrServerException
+     */
+    public void replay() throws IOException, SolrServerException {
+        if (outFile != null && outFile.getCanonicalFile().equals(file.getCanonicalFile())) {
+            throw new IllegalArgumentException("-out must not be the file being replayed : " + file);
+        }
+        HttpSolrServer solr = new HttpSolrServer(solrUrl.toString());
+        // the docs rejected again stay in the file being replayed, which isn't changed
+        BatchPoster poster = BatchPoster.create(solr, batchSize, (done, lost, failed) -> {
+            if (!lost.isEmpty()) {
+                LOG.warn("{} docs couldn't be posted nor written to -out", lost.size());
+            }
+        });
+        // not the dead letters of solr.deadletters property, which may be the file being read
+        poster.setFailureHandler(FailureHandler.create(solr, outFile == null ? null : get(outFile)));
+        long numDocs = 0;
+        LineIterator lines = FileUtils.lineIterator(file, StandardCharsets.UTF_8.name());
+        try {
+            while (lines.hasNext()) {
+                String line = lines.next().trim();
+                if (!line.isEmpty()) {
+                    poster.add(readDoc(line));
+                    numDocs++;
+                }
+            }
+        } finally {
+            LineIterator.closeQuietly(lines);
+        }
+        poster.close();
+        LOG.info("Replayed {} docs, Failed : {}", numDocs, poster.getNumFailed());
+        LOG.info("Commit response : {}", solr.commit());
+        solr.shutdown();
+    }
+
+    public static void main(String[] args) throws IOException, SolrServerException {
+        DeadLetters deadLetters = new DeadLetters();
+        CmdLineParser parser = new CmdLineParser(deadLetters);
+        try {
+            parser.parseArgument(args);
+        } catch (CmdLineException e) {
+            System.err.println(e.getMessage());
+            parser.printUsage(System.out);
+            return;
+        }
+        deadLetters.replay();
+        System.out.println("Done");
+    }
+}
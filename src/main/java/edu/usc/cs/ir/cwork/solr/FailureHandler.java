@@ -0,0 +1,205 @@
+package edu.usc.cs.ir.cwork.solr;
+
+import org.apache.solr.client.solrj.SolrServer;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.SolrInputDocument;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Recovers from a failed batch post.
+ * Transient errors, such as connection failures and overloaded solr, are retried with
+ * exponential backoff and jitter. For other errors the batch is split in halves and the
+ * halves are posted separately, recursively, so that k bad documents in a batch of n are
+ * found in about 2k*log(n) requests. The rejected documents are written to dead letters
+ * (when configured) for later replay.
+ *
+ * The settings are taken from these system properties :
+ * <pre>
+ *     solr.retry.max     : max number of retries of transient errors (default: 5)
+ *     solr.retry.backoff : backoff of the first retry in millis, doubled for every retry (default: 1000)
+ *     solr.deadletters   : path to dead letters file (default: none, rejected docs are only logged)
+ * </pre>
+ * @see DeadLetters
+ */
+public class FailureHandler {
+
+    private static final Logger LOG = LoggerFactory.getLogger(FailureHandler.class);
+    public static final long MAX_BACKOFF = 60 * 1000;
+
+    private final SolrServer solr;
+    private final int maxRetries;
+    private final long backoff;
+    private final DeadLetters deadLetters;
+
+    private long numRequests;
+    private long numRetries;
+
+    /**
+     * Creates a failure handler having settings from system properties
+     * @param solr solr server
+     * @return failure handler
+     */
+    public static FailureHandler create(SolrServer solr) {
+        String deadLettersPath = System.getProperty("solr.deadletters", null);
+        return create(solr, deadLettersPath == null ? null : DeadLetters.get(new File(deadLettersPath)));
+    }
+
+    /**
+     * Creates a failure handler having retry settings from system properties
+     * @param solr solr server
+     * @param deadLetters dead letters for the rejected documents, can be null
+     * @return failure handler
+     */
+    public static FailureHandler create(SolrServer solr, DeadLetters deadLetters) {
+        return new FailureHandler(solr,
+                Integer.getInteger("solr.retry.max", 5),
+                Long.getLong("solr.retry.backoff", 1000L),
+                deadLetters);
+    }
+
+    /**
+     * Creates a failure handler
+     * @param solr solr server
+     * @param maxRetries max number of retries of transient errors
+     * @param backoff backoff of first retry in millis
+     * @param deadLetters dead letters for the rejected documents, can be null
+     */
+    public FailureHandler(SolrServer solr, int maxRetries, long backoff, DeadLetters deadLetters) {
+        this.solr = solr;
+        this.maxRetries = maxRetries;
+        this.backoff = backoff;
+        this.deadLetters = deadLetters;
+    }
+
+    /**
+     * Posts the documents of a failed batch
+     * @param docs documents of the failed batch
+     * @param error the error of failed post
+     * @return number of documents which couldn't be posted
+     */
+    public long recover(List<SolrInputDocument> docs, Exception error) {
+        return recover(docs, error, null);
+    }
+
+    /**
+     * Posts the documents of a failed batch
+     * @param docs documents of the failed batch
+     * @param error the error of failed post
+     * @param lost collects the documents which couldn't be posted nor written to dead
+     *             letters, can be null
+     * @return number of documents which couldn't be posted
+     */
+    public long recover(List<SolrInputDocument> docs, Exception error,
+                        List<SolrInputDocument> lost) {
+        if (isTransient(error)) {
+            error = retry(docs, error);
+            if (error == null) {
+                return 0;
+            }
+            if (isTransient(error)) {
+                // solr is unavailable, splitting the batch wouldn't help
+                LOG.error("Giving up on {} docs after {} retries : {}",
+                        docs.size(), maxRetries, error.getMessage());
+                reject(docs, error, lost);
+                return docs.size();
+            }
+        }
+        return bisect(docs, error, lost);
+    }
+
+    private long bisect(List<SolrInputDocument> docs, Exception error,
+                        List<SolrInputDocument> lost) {
+        if (docs.size() == 1) {
+            LOG.warn("Rejected {} : {}", docs.get(0).getFieldValue("id"), error.getMessage());
+            reject(docs, error, lost);
+            return 1;
+        }
+        int mid = docs.size() / 2;
+        return post(docs.subList(0, mid), lost) + post(docs.subList(mid, docs.size()), lost);
+    }
+
+    private long post(List<SolrInputDocument> docs, List<SolrInputDocument> lost) {
+        try {
+            numRequests++;
+            solr.add(docs);
+            return 0;
+        } catch (Exception e) {
+            return recover(docs, e, lost);
+        }
+    }
+
+    /**
+     * Retries the post of documents with backoff, as long as the errors are transient
+     * @param docs documents
+     * @param error error of the last attempt
+     * @return the last error, or null when the documents are posted
+     */
+    private Exception retry(List<SolrInputDocument> docs, Exception error) {
+        for (int attempt = 0; attempt < maxRetries; attempt++) {
+            LOG.warn("Retry {} of {} docs after : {}", attempt + 1, docs.size(), error.getMessage());
+            sleep(attempt);
+            numRetries++;
+            try {
+                numRequests++;
+                solr.add(docs);
+                return null;
+            } catch (Exception e) {
+                error = e;
+                if (!isTransient(e)) {
+                    break;
+                }
+            }
+        }
+        return error;
+    }
+
+    private void sleep(int attempt) {
+        long max = Math.min(MAX_BACKOFF, backoff << Math.min(attempt, 30));
+        long millis = max / 2 + ThreadLocalRandom.current().nextLong(max / 2 + 1);
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void reject(List<SolrInputDocument> docs, Exception error,
+                        List<SolrInputDocument> lost) {
+        boolean saved = deadLetters != null && deadLetters.write(docs, error.getMessage());
+        if (!saved && lost != null) {
+            lost.addAll(docs);
+        }
+    }
+
+    /**
+     * Checks if the error is transient, i.e. the same request may succeed later
+     * @param error the error
+     * @return true for IO errors and HTTP 429, 502, 503 and 504 responses
+     */
+    public static boolean isTransient(Throwable error) {
+        for (Throwable e = error; e != null; e = e.getCause() == e ? null : e.getCause()) {
+            if (e instanceof IOException) {
+                return true;
+            }
+            if (e instanceof SolrException) {
+                int code = ((SolrException) e).code();
+                return code == 429 || code == 502 || code == 503 || code == 504;
+            }
+        }
+        return false;
+    }
+
+    public long getNumRequests() {
+        return numRequests;
+    }
+
+    public long getNumRetries() {
+        return numRetries;
+    }
+}
@@ -0,0 +1,299 @@
+package edu.usc.cs.ir.cwork.solr;
+
+import edu.usc.cs.ir.cwork.nutch.AckTracker;
+import edu.usc.cs.ir.cwork.nutch.Checkpoint;
+import edu.usc.cs.ir.cwork.nutch.RecordIterator;
+import org.apache.nutch.protocol.Content;
+import org.apache.solr.client.solrj.SolrServer;
+import org.apache.solr.common.SolrInputDocument;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Indexes the records of nutch segments to solr using a staged pipeline.
+ * The calling thread reads the records, parser threads map them to solr documents
+ * and poster threads post the documents in batches.
+ * The stages are joined by bounded queues, so a slow stage blocks the stages before it.
+ *
+ * A record is acknowledged to the checkpoint when it is done : skipped by the filter,
+ * mapped to no document, failed to map, or its document is posted or written to dead letters.
+ * When a worker dies, or a document can neither be posted nor written to dead letters,
+ * the pipeline is stopped and the failure is thrown from {@link #run(RecordIterator, Function)}.
+ * The record of such a document stays pending, so the job resumes from it.
+ */
+public class IndexPipeline {
+
+    private static final Logger LOG = LoggerFactory.getLogger(IndexPipeline.class);
+    /**
+     * Number of queue slots per parser thread between the stages of pipeline
+     */
+    private static final int QUEUE_FACTOR = 4;
+    /**
+     * Max number of skipped records acknowledged together
+     */
+    private static final int SKIP_BATCH = 1000;
+    // marker for end of stream, compared by reference
+    private static final Task END = new Task(-1, null);
+
+    /**
+     * A record flowing through the pipeline
+     */
+    private static class Task {
+        private final long seq;
+        private final Content content;
+        private SolrInputDocument doc;
+
+        private Task(long seq, Content content) {
+            this.seq = seq;
+            this.content = content;
+        }
+    }
+
+    private final SolrServer solr;
+    private final int numThreads;
+    private final int numPosters;
+    private final int batchSize;
+    private Predicate<Content> filter = content -> true;
+
+    private final AtomicLong numRead = new AtomicLong();
+    private final AtomicLong numSkipped = new AtomicLong();
+    private final AtomicLong numParsed = new AtomicLong();
+    private final AtomicLong numPosted = new AtomicLong();
+    private final AtomicLong numFailed = new AtomicLong();
+
+    /**
+     * Creates a pipeline
+     * @param solr solr server
+     * @param numThreads number of parser threads
+     * @param numPosters number of threads posting batches to solr
+     * @param batchSize max number of documents in a batch
+     */
+    public IndexPipeline(SolrServer solr, int numThreads, int numPosters, int batchSize) {
+        this.solr = solr;
+        this.numThreads = numThreads;
+        this.numPosters = numPosters;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Sets the filter of records to be parsed. The other records are skipped by the
+     * reader, without waiting for a parser
+     * @param filter the filter, tested on the reader thread
+     */
+    public void setFilter(Predicate<Content> filter) {
+        this.filter = filter;
+    }
+
+    /**
+     * Runs the pipeline until all the records are indexed
+     * @param recs records from segments
+     * @param mapper maps the content to solr document, called by the parser threads.
+     *               Returns null when the record has nothing to index
+     * @throws InterruptedException
+     * @throws IllegalStateException when the pipeline is stopped by a failure
+     */
+    public void run(RecordIterator<Content> recs, Function<Content, SolrInputDocument> mapper)
+            throws InterruptedException {
+
+        BlockingQueue<Task> contents = new ArrayBlockingQueue<>(QUEUE_FACTOR * numThreads);
+        BlockingQueue<Task> docs = new ArrayBlockingQueue<>(QUEUE_FACTOR * numThreads);
+        AckTracker tracker = new AckTracker(recs);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        long delay = 2 * 1000;
+
+        ScheduledExecutorService progress = Executors.newSingleThreadScheduledExecutor();
+        progress.scheduleAtFixedRate(() -> LOG.info(
+                "Read : {}, Skipped : {}, Parsed : {}, Posted : {}, Failed : {}, Queued contents : {}, Queued docs : {}",
+                numRead.get(), numSkipped.get(), numParsed.get(), numPosted.get(), numFailed.get(),
+                contents.size(), docs.size()), delay, delay, TimeUnit.MILLISECONDS);
+
+        ExecutorService parsers = Executors.newFixedThreadPool(numThreads);
+        for (int i = 0; i < numThreads; i++) {
+            parsers.execute(() -> parseAll(contents, docs, mapper, tracker, failure));
+        }
+        ExecutorService posters = Executors.newFixedThreadPool(numPosters);
+        for (int i = 0; i < numPosters; i++) {
+            posters.execute(() -> postAll(docs, tracker, failure));
+        }
+
+        List<Long> skipped = new ArrayList<>();
+        try {
+            while (recs.hasNext()) {
+                Checkpoint.Mark mark = recs.getMark();
+                Content content = recs.next().getValue();
+                numRead.incrementAndGet();
+                long seq = tracker.track(mark);
+                if (!filter.test(content)) {
+                    // fast path, without waiting for a parser
+                    numSkipped.incrementAndGet();
+                    skipped.add(seq);
+                    if (skipped.size() >= SKIP_BATCH) {
+                        ack(tracker, skipped);
+                    }
+                    continue;
+                }
+                // before waiting for the parsers, so that the skipped records don't hold the checkpoint
+                ack(tracker, skipped);
+                put(contents, new Task(seq, content), failure);
+            }
+            ack(tracker, skipped);
+            // drain the pipeline, stage by stage
+            for (int i = 0; i < numThreads; i++) {
+                put(contents, END, failure);
+            }
+            parsers.shutdown();
+            parsers.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            for (int i = 0; i < numPosters; i++) {
+                put(docs, END, failure);
+            }
+            posters.shutdown();
+            posters.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            checkFailure(failure);
+        } finally {
+            // no-op when drained, else stops the workers blocked on the queues
+            parsers.shutdownNow();
+            posters.shutdownNow();
+            progress.shutdown();
+            tracker.flush();
+        }
+        LOG.info("Done. Read = {}, Skipped = {}, Parsed = {}, Posted = {}, Failed = {}",
+                numRead.get(), numSkipped.get(), numParsed.get(), numPosted.get(), numFailed.get());
+    }
+
+    private static void ack(AckTracker tracker, List<Long> seqs) {
+        if (!seqs.isEmpty()) {
+            tracker.ack(seqs);
+            seqs.clear();
+        }
+    }
+
+    /**
+     * Puts the task to the queue of next stage, waiting for space as long as the
+     * workers are alive
+     * @param queue the queue
+     * @param task the task
+     * @param failure failure of the workers
+     * @throws InterruptedException
+     */
+    private static void put(BlockingQueue<Task> queue, Task task,
+                            AtomicReference<Throwable> failure) throws InterruptedException {
+        while (!queue.offer(task, 1, TimeUnit.SECONDS)) {
+            checkFailure(failure);
+        }
+    }
+
+    private static void checkFailure(AtomicReference<Throwable> failure) {
+        Throwable error = failure.get();
+        if (error != null) {
+            throw new IllegalStateException("Indexing stopped : " + error.getMessage(), error);
+        }
+    }
+
+    /**
+     * Parser stage : maps the contents to docs until the end marker is seen.
+     * A record which can't be mapped is skipped; any other error stops the pipeline
+     * @param contents input queue
+     * @param docs output queue
+     * @param mapper maps content to doc
+     * @param tracker tracker for acknowledging the records having no doc
+     * @param failure set when this worker dies
+     */
+    private void parseAll(BlockingQueue<Task> contents, BlockingQueue<Task> docs,
+                          Function<Content, SolrInputDocument> mapper, AckTracker tracker,
+                          AtomicReference<Throwable> failure) {
+        try {
+            Task task;
+            while ((task = contents.take()) != END) {
+                try {
+                    task.doc = mapper.apply(task.content);
+                } catch (Exception | StackOverflowError e) {
+                    LOG.error("Error processing {}", task.content.getUrl());
+                    LOG.error(e.getMessage(), e);
+                    tracker.ack(Collections.singleton(task.seq));
+                    continue;
+                }
+                numParsed.incrementAndGet();
+                if (task.doc == null) {
+                    tracker.ack(Collections.singleton(task.seq));
+                } else {
+                    put(docs, task, failure);
+                }
+            }
+        } catch (InterruptedException e) {
+            LOG.warn("Parser interrupted");
+            Thread.currentThread().interrupt();
+        } catch (Throwable e) {
+            LOG.error("Parser failed : " + e.getMessage(), e);
+            failure.compareAndSet(null, e);
+        }
+    }
+
+    /**
+     * Poster stage : posts docs to solr in batches until the end marker is seen.
+     * The records are acknowledged when their docs are posted, or written to dead letters.
+     * A doc which is neither stops the pipeline, and its record stays pending
+     * @param docs input queue
+     * @param tracker tracker for acknowledging the posted records
+     * @param failure set when this worker dies
+     */
+    private void postAll(BlockingQueue<Task> docs, AckTracker tracker,
+                         AtomicReference<Throwable> failure) {
+        BatchPoster poster = BatchPoster.create(solr, batchSize, (done, lost, failed) -> {
+            numPosted.addAndGet(done.size() + lost.size() - failed);
+            numFailed.addAndGet(failed);
+            tracker.ack(done);
+            if (!lost.isEmpty()) {
+                throw new IllegalStateException(lost.size() + " docs couldn't be posted to solr,"
+                        + " nor written to dead letters (-Dsolr.deadletters)");
+            }
+        });
+        try {
+            Task task;
+            while ((task = docs.take()) != END) {
+                poster.add(task.doc, task.seq);
+            }
+            //left out
+            poster.close();
+        } catch (InterruptedException e) {
+            LOG.warn("Poster interrupted");
+            Thread.currentThread().interrupt();
+        } catch (Throwable e) {
+            LOG.error("Poster failed : " + e.getMessage(), e);
+            failure.compareAndSet(null, e);
+        }
+    }
+
+    public long getNumRead() {
+        return numRead.get();
+    }
+
+    public long getNumSkipped() {
+        return numSkipped.get();
+    }
+
+    public long getNumParsed() {
+        return numParsed.get();
+    }
+
+    public long getNumPosted() {
+        return numPosted.get();
+    }
+
+    public long getNumFailed() {
+        return numFailed.get();
+    }
+}
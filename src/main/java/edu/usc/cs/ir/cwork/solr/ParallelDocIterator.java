@@ -0,0 +1,202 @@
+package edu.usc.cs.ir.cwork.solr;
+
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.SolrServer;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.util.ClientUtils;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrDocumentList;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Iterates over solr results while the next pages are fetched in the background, so the
+ * consumer doesn't wait for a round trip to solr after every page.
+ * The query can also be split into slices of disjoint id ranges, which are fetched
+ * concurrently and merged in no particular order. The slice boundaries are found by
+ * sampling the ids at equal intervals of the id sorted results, and every slice is read
+ * with id range paging of {@link SolrDocIterator}.
+ */
+public class ParallelDocIterator implements Iterator<SolrDocument>, Closeable {
+
+    public static final Logger LOG = LoggerFactory.getLogger(ParallelDocIterator.class);
+    private static final List<SolrDocument> END = Collections.emptyList();
+
+    private final BlockingQueue<List<SolrDocument>> pages;
+    private final ExecutorService fetchers;
+    private final AtomicLong numFound = new AtomicLong();
+    private final AtomicReference<RuntimeException> error = new AtomicReference<>();
+    private final int numSlices;
+    private final int start;
+    private int numFinished;
+    private long count;
+    private Iterator<SolrDocument> curPage = Collections.emptyIterator();
+
+    /**
+     * Creates iterator
+     * @param solr solr server
+     * @param queryStr query
+     * @param start number of docs to skip, only when there is a single slice
+     * @param rows number of docs in a page
+     * @param numSlices number of slices fetched concurrently
+     * @param prefetch number of pages fetched ahead, per slice
+     * @param fields fields to fetch, all the fields when none
+     */
+    public ParallelDocIterator(SolrServer solr, String queryStr, int start, int rows,
+                               int numSlices, int prefetch, String... fields) {
+        List<String> slices = numSlices > 1 ? slice(solr, queryStr, rows, numSlices)
+                : Collections.singletonList(queryStr);
+        if (slices.size() > 1 && start > 0) {
+            LOG.warn("Start {} is ignored, the query is split into {} slices", start, slices.size());
+        }
+        this.numSlices = slices.size();
+        this.start = this.numSlices > 1 ? 0 : start;
+        this.pages = new ArrayBlockingQueue<>(Math.max(1, prefetch) * this.numSlices);
+        this.fetchers = Executors.newFixedThreadPool(this.numSlices, runnable -> {
+            Thread thread = new Thread(runnable, "solr-fetcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (String slice : slices) {
+            fetchers.submit(() -> fetch(solr, slice, rows, fields));
+        }
+        fetchers.shutdown();
+    }
+
+    /**
+     * Splits query into queries of disjoint id ranges having about the same number of docs
+     * @return queries of slices
+     */
+    private static List<String> slice(SolrServer solr, String queryStr, int rows, int numSlices) {
+        try {
+            SolrQuery query = new SolrQuery(queryStr);
+            query.setRows(0);
+            long total = solr.query(query).getResults().getNumFound();
+            if (total < (long) rows * numSlices) {
+                return Collections.singletonList(queryStr);
+            }
+            query.setRows(1);
+            query.setFields(SolrDocIterator.ID_FIELD);
+            query.setSort(SolrDocIterator.ID_FIELD, SolrQuery.ORDER.asc);
+            List<String> bounds = new ArrayList<>();
+            bounds.add("*");
+            for (int i = 1; i < numSlices; i++) {
+                query.setStart((int) (total * i / numSlices));
+                SolrDocumentList docs = solr.query(query).getResults();
+                if (!docs.isEmpty()) {
+                    bounds.add(ClientUtils.escapeQueryChars(
+                            docs.get(0).getFieldValue(SolrDocIterator.ID_FIELD).toString()));
+                }
+            }
+            bounds.add("*");
+            List<String> slices = new ArrayList<>();
+            for (int i = 0; i + 1 < bounds.size(); i++) {
+                String upper = i + 2 == bounds.size() ? "]" : "}";
+                slices.add("(" + queryStr + ") AND " + SolrDocIterator.ID_FIELD
+                        + ":[" + bounds.get(i) + " TO " + bounds.get(i + 1) + upper);
+            }
+            LOG.info("Split {} docs into {} slices", total, slices.size());
+            return slices;
+        } catch (SolrServerException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void fetch(SolrServer solr, String queryStr, int rows, String... fields) {
+        try {
+            SolrDocIterator docs = new SolrDocIterator(solr, queryStr, start, rows, true, fields);
+            numFound.addAndGet(docs.getNumFound());
+            List<SolrDocument> page = new ArrayList<>(rows);
+            while (docs.hasNext()) {
+                page.add(docs.next());
+                if (page.size() >= rows) {
+                    pages.put(page);
+                    page = new ArrayList<>(rows);
+                }
+            }
+            if (!page.isEmpty()) {
+                pages.put(page);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        } catch (RuntimeException e) {
+            LOG.error("Couldn't fetch {} : {}", queryStr, e.getMessage());
+            error.compareAndSet(null, e);
+        }
+        try {
+            pages.put(END);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (!curPage.hasNext()) {
+            // as soon as a slice fails, without reading the other slices to their end
+            if (error.get() != null) {
+                throw error.get();
+            }
+            if (numFinished >= numSlices) {
+                return false;
+            }
+            try {
+                List<SolrDocument> page = pages.take();
+                if (page == END) {
+                    numFinished++;
+                } else {
+                    curPage = page.iterator();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public SolrDocument next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        count++;
+        return curPage.next();
+    }
+
+    /**
+     * @return number of docs consumed, including the skipped docs at start
+     */
+    public long getNextStart() {
+        return start + count;
+    }
+
+    /**
+     * @return number of docs matching the query, known after all the slices have started
+     */
+    public long getNumFound() {
+        return numFound.get();
+    }
+
+    /**
+     * Stops the fetchers
+     */
+    @Override
+    public void close() {
+        fetchers.shutdownNow();
+    }
+}
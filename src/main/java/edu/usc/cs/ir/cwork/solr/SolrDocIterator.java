@@ -1,6 +1,7 @@
 package edu.usc.cs.ir.cwork.solr;
 
 import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.util.ClientUtils;
 import org.apache.solr.client.solrj.SolrServer;
 import org.apache.solr.client.solrj.SolrServerException;
 import org.apache.solr.client.solrj.impl.HttpSolrServer;
@@ -10,10 +11,18 @@ import org.apache.solr.common.SolrDocumentList;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Arrays;
 import java.util.Iterator;
 
 /**
  * This iterator iterates over all the pages of solr results.
+ *
+ * By default the pages are fetched with start and rows, which makes solr collect and skip
+ * all the preceding docs for every page, so the pages get slower as they go deeper.
+ * In the id range paging mode, the docs are sorted by id and every page after the first
+ * is queried with a filter for ids greater than the last seen id, so every page costs
+ * the same. {@link #getNextStart()} and {@link #getNumFound()} report the progress the
+ * same way in both the modes.
  * @since 6.0
  */
 public class SolrDocIterator implements Iterator<SolrDocument> {
@@ -21,6 +30,7 @@ public class SolrDocIterator implements Iterator<SolrDocument> {
     public static final Logger LOG = LoggerFactory.getLogger(SolrDocIterator.class);
     public static final int DEF_START = 0;
     public static final int DEF_ROWS = 1000;
+    public static final String ID_FIELD = "id";
 
     private long count = 0;
     private long limit = Long.MAX_VALUE;
@@ -30,6 +40,9 @@ public class SolrDocIterator implements Iterator<SolrDocument> {
     private int nextStart;
     private Iterator<SolrDocument> curPage;
     private SolrDocument next;
+    private boolean rangePaging;
+    private String lastId;
+    private String rangeFilter;
 
     public SolrDocIterator(String solrUrl, String queryStr, int start, int rows,
                            String...fields){
@@ -42,21 +55,48 @@ public class SolrDocIterator implements Iterator<SolrDocument> {
 
     public SolrDocIterator(SolrServer solr, String queryStr, int start, int rows,
                            String...fields){
+        this(solr, queryStr, start, rows, false, fields);
+    }
+
+    /**
+     * Creates iterator
+     * @param solr solr server
+     * @param queryStr query
+     * @param start number of docs to skip
+     * @param rows number of docs in a page
+     * @param rangePaging true to page by id ranges, false to page by start and rows
+     * @param fields fields to fetch, all the fields when none
+     */
+    public SolrDocIterator(SolrServer solr, String queryStr, int start, int rows,
+                           boolean rangePaging, String...fields){
         this.solr = solr;
         this.nextStart = start;
+        this.rangePaging = rangePaging;
         this.query = new SolrQuery(queryStr);
         this.query.setRows(rows);
+        if (rangePaging) {
+            this.query.setSort(ID_FIELD, SolrQuery.ORDER.asc);
+        }
         if (fields.length > 0) {
-            this.query.setFields(fields);
+            setFields(fields);
         }
         this.next = getNext(true);
         this.count = 1;
     }
 
     public void setFields(String...fields) {
+        if (rangePaging && !Arrays.asList(fields).contains(ID_FIELD)) {
+            // the last id is needed for the next page
+            fields = Arrays.copyOf(fields, fields.length + 1);
+            fields[fields.length - 1] = ID_FIELD;
+        }
         this.query.setFields(fields);
     }
 
+    public boolean isRangePaging() {
+        return rangePaging;
+    }
+
     public long getNumFound() {
         return numFound;
     }
@@ -70,12 +110,31 @@ public class SolrDocIterator implements Iterator<SolrDocument> {
     }
 
     public SolrDocumentList queryNext()  {
-        query.setStart(nextStart);
+        if (rangePaging && lastId != null) {
+            if (rangeFilter != null) {
+                query.removeFilterQuery(rangeFilter);
+            }
+            // every page has a new filter, caching it would only evict the useful filters
+            rangeFilter = "{!cache=false}" + ID_FIELD + ":{" + ClientUtils.escapeQueryChars(lastId) + " TO *]";
+            query.addFilterQuery(rangeFilter);
+            query.setStart(0);
+        } else {
+            query.setStart(nextStart);
+        }
         try {
-            LOG.debug("Query {}, Start = {}", query.getQuery(), nextStart);
+            LOG.debug("Query {}, Start = {}, After = {}", query.getQuery(), nextStart, lastId);
             QueryResponse response = solr.query(query);
-            this.numFound = response.getResults().getNumFound();
-            return response.getResults();
+            SolrDocumentList page = response.getResults();
+            if (rangePaging && lastId != null) {
+                // the docs after the last id are remaining
+                this.numFound = nextStart + page.getNumFound();
+            } else {
+                this.numFound = page.getNumFound();
+            }
+            if (rangePaging && !page.isEmpty()) {
+                lastId = page.get(page.size() - 1).getFieldValue(ID_FIELD).toString();
+            }
+            return page;
         } catch (SolrServerException e) {
             throw new RuntimeException(e);
         }
@@ -98,7 +157,6 @@ public class SolrDocIterator implements Iterator<SolrDocument> {
         if (forceFetch || !curPage.hasNext() && nextStart < numFound) {
             //there is more
             SolrDocumentList page = queryNext();
-            this.numFound = page.getNumFound();
             this.nextStart += page.size();
             this.curPage = page.iterator();
         }
@@ -1,6 +1,7 @@
 package edu.usc.cs.ir.cwork.solr;
 
 import com.google.common.io.Files;
+import edu.usc.cs.ir.cwork.nutch.Checkpoint;
 import edu.usc.cs.ir.cwork.nutch.OutlinkUpdater;
 import edu.usc.cs.ir.cwork.nutch.RecordIterator;
 import org.apache.commons.math3.util.Pair;
@@ -27,11 +28,40 @@ public class SolrDocUpdates implements Iterator<SolrInputDocument> {
     private SolrInputDocument next;
     private Function<Content, SolrInputDocument> transformer;
     private final RecordIterator<Content> input;
+    private Checkpoint.Mark nextMark;
     private long skipCount;
-    private boolean skipImages;
 
     public SolrDocUpdates(Function<Content, SolrInputDocument> transformer,
                           File segmentListFile) throws IOException, InterruptedException {
+        this(transformer, segmentListFile, null);
+    }
+
+    /**
+     * Creates stream of updates which resumes from checkpoint
+     * @param transformer maps content to solr update
+     * @param segmentListFile file having list of segments
+     * @param checkpoint checkpoint to resume from, can be null
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public SolrDocUpdates(Function<Content, SolrInputDocument> transformer,
+                          File segmentListFile, Checkpoint checkpoint)
+            throws IOException, InterruptedException {
+        this(transformer, segmentListFile, checkpoint, 1);
+    }
+
+    /**
+     * Creates stream of updates which reads parts concurrently and resumes from checkpoint
+     * @param transformer maps content to solr update
+     * @param segmentListFile file having list of segments
+     * @param checkpoint checkpoint to resume from, can be null
+     * @param numReaders number of parts to read concurrently
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public SolrDocUpdates(Function<Content, SolrInputDocument> transformer,
+                          File segmentListFile, Checkpoint checkpoint, int numReaders)
+            throws IOException, InterruptedException {
         this.transformer = transformer;
         List<String> segments = Files.readLines(segmentListFile, Charset.defaultCharset());
         List<String> parts = OutlinkUpdater.findContentParts(segments);
@@ -39,7 +69,7 @@ public class SolrDocUpdates implements Iterator<SolrInputDocument> {
 
         System.out.println("Found " + segments.size() + " segments");
         System.out.println("Found " + paths.size() + " parts");
-        input = new RecordIterator<>(paths);
+        input = new RecordIterator<>(paths, checkpoint, numReaders);
         next = makeNext();
     }
 
@@ -51,12 +81,21 @@ public class SolrDocUpdates implements Iterator<SolrInputDocument> {
         return skipCount;
     }
 
-    public boolean isSkipImages() {
-        return skipImages;
+    /**
+     * Gets the resume point of this stream.
+     * All the updates returned by {@link #next()} so far are before the mark.
+     * @return the mark
+     */
+    public Checkpoint.Mark getMark() {
+        return nextMark;
     }
 
-    public void setSkipImages(boolean skipImages) {
-        this.skipImages = skipImages;
+    /**
+     * Stores the current mark to checkpoint.
+     * Call this after all the updates returned so far are acknowledged by solr.
+     */
+    public void commit() {
+        input.commit(nextMark);
     }
 
     @Override
@@ -73,16 +112,12 @@ public class SolrDocUpdates implements Iterator<SolrInputDocument> {
 
     private SolrInputDocument makeNext() {
         while (input.hasNext()) {
+            Checkpoint.Mark mark = input.getMark();
             try {
                 Pair<String, Content> content = input.next();
-                if (skipImages && content.getValue().getContentType()
-                        .toLowerCase().startsWith("image")) {
-                    //skip Images
-                    continue;
-                }
-
                 SolrInputDocument update = transformer.apply(content.getValue());
                 if (update != null) {
+                    nextMark = mark;
                     return update;
                 } else {
                     skipCount++;
@@ -92,6 +127,7 @@ public class SolrDocUpdates implements Iterator<SolrInputDocument> {
             }
         }
         //end
+        nextMark = input.getMark();
         return null;
     }
 
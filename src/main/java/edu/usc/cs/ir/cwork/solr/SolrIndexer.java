@@ -1,8 +1,10 @@
 package edu.usc.cs.ir.cwork.solr;
 
+import edu.usc.cs.ir.cwork.nutch.Checkpoint;
 import edu.usc.cs.ir.cwork.nutch.RecordIterator;
 import edu.usc.cs.ir.cwork.nutch.SegContentReader;
 import edu.usc.cs.ir.cwork.solr.schema.FieldMapper;
+import edu.usc.cs.ir.cwork.tika.ParseCache;
 import edu.usc.cs.ir.cwork.tika.Parser;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.math3.util.Pair;
@@ -54,6 +56,26 @@ public class SolrIndexer {
             required = false)
     private int batchSize = 1000;
 
+    @Option(name = "-threads", aliases = {"--threads"},
+            usage = "Number of parser threads",
+            required = false)
+    private int nThreads = 1;
+
+    @Option(name = "-posters", aliases = {"--posters"},
+            usage = "Number of threads posting batches to solr",
+            required = false)
+    private int nPosters = 1;
+
+    @Option(name = "-checkpoint", aliases = {"--checkpoint"},
+            usage = "Checkpoint file for resuming the job. Created when missing",
+            required = false)
+    private File checkpointFile;
+
+    @Option(name = "-readers", aliases = {"--readers"},
+            usage = "Number of segment parts to read concurrently",
+            required = false)
+    private int nReaders = 1;
+
     public FieldMapper mapper = FieldMapper.create();
 
 
@@ -70,6 +92,7 @@ public class SolrIndexer {
         ContentBean bean = new ContentBean();
         bean.setContentType(content.getContentType());
         bean.setId(content.getUrl());
+        bean.setDigest(ParseCache.digest(content.getContent()));
 
         Map<String, Object> mdFields = new HashMap<>();
 
@@ -166,45 +189,40 @@ public class SolrIndexer {
         IOUtils.closeQuietly(stream);
         LOG.info("Found {} lines in {}", paths.size(), segsFile.getAbsolutePath());
         SegContentReader reader = new SegContentReader(paths);
-        RecordIterator recs = reader.read();
+        reader.setNumReaders(nReaders);
+        Checkpoint checkpoint = checkpointFile == null ? null : Checkpoint.load(checkpointFile);
+        RecordIterator recs = reader.read(checkpoint);
         index(recs, solr);
         System.out.println(recs.getCount());
     }
 
-    private void index(RecordIterator recs, SolrServer solr) throws IOException, SolrServerException {
-        List<ContentBean> beans = new ArrayList<>(batchSize);
-        long st = System.currentTimeMillis();
-        long count = 0;
-        long delay = 2 * 1000;
-
-        while (recs.hasNext()) {
-            Pair<String, Content> rec = recs.next();
-            Content content = rec.getValue();
-            ContentBean bean = createBean(content, reparse);
-            beans.add(bean);
-            count++;
-            if (beans.size() >= batchSize) {
-                try {
-                    solr.addBeans(beans);
-                    beans.clear();
-                } catch (Exception e) {
-                    throw new RuntimeException(e);
-                }
-            }
-
-            if (System.currentTimeMillis() - st > delay) {
-                LOG.info("Num Docs : {}", count);
-                st = System.currentTimeMillis();
-            }
-        }
+    /**
+     * Indexes the records using a staged pipeline.
+     * The calling thread reads the segments, {@code nThreads} workers parse the
+     * content and {@code nPosters} workers post the batches to solr.
+     * When a worker dies, or a batch can't be posted, the pipeline is stopped and the
+     * failure is thrown from here, like the failed post of the single threaded indexer.
+     * @param recs records from segments
+     * @param solr solr server
+     * @throws IOException
+     * @throws SolrServerException
+     * @throws InterruptedException
+     * @see IndexPipeline
+     */
+    private void index(RecordIterator<Content> recs, SolrServer solr)
+            throws IOException, SolrServerException, InterruptedException {
 
-        //left out
-        if (!beans.isEmpty()) {
-            solr.addBeans(beans);
-        }
+        IndexPipeline pipeline = new IndexPipeline(solr, nThreads, nPosters, batchSize);
+        pipeline.run(recs, content -> solr.getBinder().toSolrInputDocument(createBean(content, reparse)));
 
         // commit
-        LOG.info("Committing before exit. Num Docs = {}", count);
+        LOG.info("Committing before exit. Read = {}, Parsed = {}, Posted = {}, Failed = {}",
+                pipeline.getNumRead(), pipeline.getNumParsed(), pipeline.getNumPosted(),
+                pipeline.getNumFailed());
+        ParseCache parseCache = reparse ? Parser.getPhase1Parser().getParseCache() : null;
+        if (parseCache != null) {
+            LOG.info("Parse cache : {}", parseCache);
+        }
         UpdateResponse response = solr.commit();
         LOG.info("Commit response : {}", response);
     }
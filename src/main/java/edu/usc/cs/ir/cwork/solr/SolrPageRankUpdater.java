@@ -22,7 +22,6 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
@@ -65,7 +64,7 @@ public class SolrPageRankUpdater {
         try (InputStream stream = new FileInputStream(ranksFile)) {
             Iterator<String> lines = IOUtils.lineIterator(stream, StandardCharsets.UTF_8);
 
-            ArrayList<SolrInputDocument> buffer = new ArrayList<>(batchSize);
+            BatchPoster poster = BatchPoster.create(solr, batchSize, null);
             long st = System.currentTimeMillis();
             long count = 0;
             long delay = 2 * 1000;
@@ -75,9 +74,12 @@ public class SolrPageRankUpdater {
                 if (line.isEmpty()) {
                     continue;
                 }
-                String[] parts = line.split("\\s");
-                String id = parts[0];
-                Double score = Double.valueOf(parts[1]);
+                int sep = 0;
+                while (sep < line.length() && !Character.isWhitespace(line.charAt(sep))) {
+                    sep++;
+                }
+                String id = line.substring(0, sep);
+                Double score = Double.valueOf(line.substring(sep).trim());
 
 
                 // create the document
@@ -87,17 +89,9 @@ public class SolrPageRankUpdater {
                 Map<String, Double> fieldModifier = new HashMap<>();
                 fieldModifier.put("set", score);
                 sDoc.addField(rankField, fieldModifier);  // add the map as the field value
-                buffer.add(sDoc);
+                poster.add(sDoc);
 
                 count++;
-                if (buffer.size() >= batchSize) {
-                    try {
-                        solr.add(buffer);
-                        buffer.clear();
-                    } catch (Exception e) {
-                        throw new RuntimeException(e);
-                    }
-                }
 
                 if (System.currentTimeMillis() - st > delay) {
                     LOG.info("Num Docs : {}", count);
@@ -105,12 +99,10 @@ public class SolrPageRankUpdater {
                 }
             }
             //left out
-            if (!buffer.isEmpty()) {
-                solr.add(buffer);
-            }
+            poster.close();
 
             // commit
-            LOG.info("Committing before exit. Num Docs = {}", count);
+            LOG.info("Committing before exit. Num Docs = {}, Failed = {}", count, poster.getNumFailed());
             UpdateResponse response = solr.commit();
             solr.shutdown();
             LOG.info("Commit response : {}", response);
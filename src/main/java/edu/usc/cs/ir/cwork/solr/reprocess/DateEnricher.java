@@ -0,0 +1,27 @@
+package edu.usc.cs.ir.cwork.solr.reprocess;
+
+import edu.usc.cs.ir.cwork.tika.Parser;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrInputDocument;
+
+import java.util.Date;
+import java.util.Set;
+
+/**
+ * Finds the dates in text and stores them in dates field
+ */
+public class DateEnricher implements Enricher {
+
+    @Override
+    public String getName() {
+        return "dates";
+    }
+
+    @Override
+    public void enrich(SolrDocument source, String text, SolrInputDocument target) {
+        Set<Date> dates = Parser.parseDates(text);
+        if (dates != null && !dates.isEmpty()) {
+            target.addField("dates", dates);
+        }
+    }
+}
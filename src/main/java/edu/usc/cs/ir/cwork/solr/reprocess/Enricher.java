@@ -0,0 +1,27 @@
+package edu.usc.cs.ir.cwork.solr.reprocess;
+
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrInputDocument;
+
+/**
+ * Adds fields to a document which is re-processed.
+ * The enrichers are shared by all the threads, so the implementations should be thread safe.
+ * The enrichers of a document run in their order, so an enricher can use the fields added
+ * by the earlier ones.
+ */
+public interface Enricher {
+
+    /**
+     * @return name of enricher, used in the metrics
+     */
+    String getName();
+
+    /**
+     * Enriches a document
+     * @param source the document from source solr
+     * @param text the text of document, which is the text fields of source joined by new lines
+     * @param target the document for destination solr
+     * @throws Exception when the document can't be enriched
+     */
+    void enrich(SolrDocument source, String text, SolrInputDocument target) throws Exception;
+}
@@ -0,0 +1,64 @@
+package edu.usc.cs.ir.cwork.solr.reprocess;
+
+import edu.usc.cs.ir.cwork.solr.ContentBean;
+import edu.usc.cs.ir.cwork.tika.Parser;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrInputDocument;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Resolves the locations of document with geo gazetteer, and stores them in cities, states,
+ * countries and location_geos fields. The locations are taken from the target document,
+ * as found by {@link NerEnricher}, or else from the source document.
+ */
+public class GeoEnricher implements Enricher {
+
+    public static final String LOCATIONS = "locations";
+
+    @Override
+    public String getName() {
+        return "geo";
+    }
+
+    @Override
+    public void enrich(SolrDocument source, String text, SolrInputDocument target) {
+        Set<String> locations = new HashSet<>();
+        Collection<Object> values = target.getFieldValues(LOCATIONS);
+        if (values == null) {
+            values = source.getFieldValues(LOCATIONS);
+        }
+        if (values != null) {
+            for (Object value : values) {
+                addValues(value, locations);
+            }
+        }
+        if (locations.isEmpty()) {
+            return;
+        }
+        ContentBean bean = new ContentBean();
+        Parser.getPhase2Parser().enrichGeoFields(locations, bean);
+        setField(target, "cities", bean.getCities());
+        setField(target, "states", bean.getStates());
+        setField(target, "countries", bean.getCountries());
+        setField(target, "location_geos", bean.getGeoCoords());
+    }
+
+    private static void addValues(Object value, Set<String> locations) {
+        if (value instanceof Object[]) {
+            for (Object item : (Object[]) value) {
+                addValues(item, locations);
+            }
+        } else if (value != null) {
+            locations.add(value.toString());
+        }
+    }
+
+    private static void setField(SolrInputDocument doc, String name, Set<String> values) {
+        if (values != null && !values.isEmpty()) {
+            doc.setField(name, values);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package edu.usc.cs.ir.cwork.solr.reprocess;
+
+import edu.usc.cs.ir.cwork.solr.schema.FieldMapper;
+import edu.usc.cs.ir.cwork.tika.Parser;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.tika.metadata.Metadata;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Runs the named entity recognisers of phase 2 parser on the text.
+ * The entities are stored in persons, locations, organizations, phonenumbers, weaponnames
+ * and weapontypes fields, and the rest of metadata in the dynamic *_md fields.
+ */
+public class NerEnricher implements Enricher {
+
+    public static final String MD_SUFFIX = "_md";
+    private static final FieldMapper MAPPER = FieldMapper.create();
+    private static final Map<String, String> FIELDS = new HashMap<>();
+    static {
+        FIELDS.put("NER_PERSON", "persons");
+        FIELDS.put("NER_LOCATION", "locations");
+        FIELDS.put("NER_ORGANIZATION", "organizations");
+        FIELDS.put("NER_PHONE_NUMBER", "phonenumbers");
+        FIELDS.put("NER_WEAPON_NAME", "weaponnames");
+        FIELDS.put("NER_WEAPON_TYPE", "weapontypes");
+    }
+
+    @Override
+    public String getName() {
+        return "ner";
+    }
+
+    @Override
+    public void enrich(SolrDocument source, String text, SolrInputDocument target) {
+        Metadata md = Parser.getPhase2Parser().parseContent(text);
+        if (md == null) {
+            return;
+        }
+        for (String name : md.names()) {
+            Serializable value = md.isMultiValued(name) ?
+                    md.getValues(name) : md.get(name);
+            if (FIELDS.containsKey(name)) { //mapping exists
+                target.setField(FIELDS.get(name), value);
+            } else {
+                String newName = MAPPER.mapField(name, value);
+                if (newName != null) {
+                    newName += MD_SUFFIX;
+                    target.setField(newName, value);
+                }
+            }
+        }
+    }
+}
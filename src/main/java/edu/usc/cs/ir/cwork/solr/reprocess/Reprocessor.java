@@ -0,0 +1,387 @@
+package edu.usc.cs.ir.cwork.solr.reprocess;
+
+import edu.usc.cs.ir.cwork.solr.BatchPoster;
+import edu.usc.cs.ir.cwork.solr.ParallelDocIterator;
+import edu.usc.cs.ir.cwork.util.Watchdog;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.impl.HttpSolrServer;
+import org.apache.solr.client.solrj.response.UpdateResponse;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrInputDocument;
+import org.kohsuke.args4j.CmdLineException;
+import org.kohsuke.args4j.CmdLineParser;
+import org.kohsuke.args4j.Option;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Reads documents from a solr, runs a list of enrichers on them and posts the results to
+ * another (or the same) solr.
+ * The documents are streamed through three stages which don't wait for each other:
+ * the source pages are prefetched by {@link ParallelDocIterator}, the documents are
+ * enriched in a work stealing pool with a bounded number of documents in flight, and the
+ * results are posted by a writer thread through {@link BatchPoster}. A slow document holds
+ * up only its own thread; it is interrupted by a watchdog when it exceeds the time limit,
+ * and posted with the fields enriched so far.
+ *
+ * This class also offers the CLI for re-processing.
+ */
+public class Reprocessor {
+
+    private static final Logger LOG = LoggerFactory.getLogger(Reprocessor.class);
+    private static final SolrInputDocument END = new SolrInputDocument();
+    public static final int WINDOW_PER_THREAD = 4;
+
+    @Option(name = "-src", usage = "Source Solr url", required = true)
+    private URL srcSolr;
+
+    @Option(name = "-dest", usage = "Destination Solr url", required = true)
+    private URL destSolr;
+
+    @Option(name = "-q", usage = "Query of the source documents")
+    private String queryStr = "*:*";
+
+    @Option(name = "-start", usage = "Number of documents to skip")
+    private int start = 0;
+
+    @Option(name = "-batch", usage = "Number of documents to buffer and post to solr")
+    private int batchSize = 1000;
+
+    @Option(name = "-threads", usage = "Number of Threads")
+    private int nThreads = 2;
+
+    @Option(name = "-timeout", usage = "Time out for enriching a document in millis")
+    private int timeout = 1500;
+
+    @Option(name = "-slices", usage = "Number of id range slices of the query fetched concurrently")
+    private int numSlices = 1;
+
+    @Option(name = "-prefetch", usage = "Number of pages fetched ahead, per slice")
+    private int prefetch = 2;
+
+    @Option(name = "-enrichers", usage = "Comma separated enrichers, run in the order. Known: ner,dates,geo")
+    private String enricherNames = "ner,dates";
+
+    @Option(name = "-fl", usage = "Comma separated fields to copy from source")
+    private String copyFields = "id,title,content,contentLength,boost,lastModified,digest,host";
+
+    @Option(name = "-text", usage = "Comma separated fields to make the text for enrichers")
+    private String textFields = "id,title,content,lastModified";
+
+    private List<Enricher> enrichers;
+    private Set<String> textFieldSet;
+    private EnricherStats[] stats;
+
+    /**
+     * Time taken by an enricher
+     */
+    public static class EnricherStats {
+        private final String name;
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong nanos = new AtomicLong();
+        private final AtomicLong failures = new AtomicLong();
+
+        private EnricherStats(String name) {
+            this.name = name;
+        }
+
+        private void record(long elapsedNanos, boolean failed) {
+            count.incrementAndGet();
+            nanos.addAndGet(elapsedNanos);
+            if (failed) {
+                failures.incrementAndGet();
+            }
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getCount() {
+            return count.get();
+        }
+
+        public long getFailures() {
+            return failures.get();
+        }
+
+        public double getAvgMillis() {
+            long n = count.get();
+            return n == 0 ? 0 : nanos.get() / 1e6 / n;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %d docs, %.1fms avg, %d failed",
+                    name, getCount(), getAvgMillis(), getFailures());
+        }
+    }
+
+    public Reprocessor() {
+    }
+
+    /**
+     * Creates a re-processor
+     * @param srcSolr source solr
+     * @param destSolr destination solr
+     * @param queryStr query of source documents
+     * @param enrichers the enrichers, run in the order
+     */
+    public Reprocessor(URL srcSolr, URL destSolr, String queryStr, List<Enricher> enrichers) {
+        this.srcSolr = srcSolr;
+        this.destSolr = destSolr;
+        this.queryStr = queryStr;
+        this.enrichers = enrichers;
+    }
+
+    /**
+     * Creates enricher
+     * @param name name of enricher
+     * @return enricher
+     */
+    public static Enricher createEnricher(String name) {
+        switch (name.trim()) {
+            case "ner":
+                return new NerEnricher();
+            case "dates":
+                return new DateEnricher();
+            case "geo":
+                return new GeoEnricher();
+            default:
+                throw new IllegalArgumentException("Unknown enricher " + name);
+        }
+    }
+
+    /**
+     * Runs the re-processing
+     * @throws IOException
+     * @throws SolrServerException
+     * @throws InterruptedException
+     */
+    public void run() throws IOException, SolrServerException, InterruptedException {
+        if (enrichers == null) {
+            enrichers = new ArrayList<>();
+            for (String name : enricherNames.split(",")) {
+                enrichers.add(createEnricher(name));
+            }
+        }
+        textFieldSet = new HashSet<>(Arrays.asList(textFields.split(",")));
+        stats = new EnricherStats[enrichers.size()];
+        for (int i = 0; i < stats.length; i++) {
+            stats[i] = new EnricherStats(enrichers.get(i).getName());
+        }
+
+        HttpSolrServer source = new HttpSolrServer(srcSolr.toString());
+        source.setConnectionTimeout(5 * 1000);
+        HttpSolrServer dest = new HttpSolrServer(destSolr.toString());
+        dest.setConnectionTimeout(5 * 1000);
+
+        // writer stage. The poster throws when docs are lost, which stops the job
+        BatchPoster poster = BatchPoster.create(dest, batchSize, null);
+        BlockingQueue<SolrInputDocument> results = new ArrayBlockingQueue<>(Math.max(batchSize, 1) * 2);
+        AtomicReference<RuntimeException> writeFailure = new AtomicReference<>();
+        Thread writer = new Thread(() -> {
+            try {
+                for (SolrInputDocument doc = results.take(); doc != END; doc = results.take()) {
+                    // after a failure, the results are drained so that the enrichers aren't blocked
+                    if (writeFailure.get() == null) {
+                        post(poster, doc, writeFailure);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (writeFailure.get() == null) {
+                post(poster, null, writeFailure);
+            }
+        }, "solr-writer");
+        writer.start();
+
+        // enricher stage
+        ExecutorService workers = Executors.newWorkStealingPool(nThreads);
+        Semaphore window = new Semaphore(nThreads * WINDOW_PER_THREAD);
+        AtomicLong numDone = new AtomicLong();
+        long count = 0;
+        long st = System.currentTimeMillis();
+        try (Watchdog watchdog = new Watchdog();
+             ParallelDocIterator docs = new ParallelDocIterator(source, queryStr, start,
+                     batchSize, numSlices, prefetch, copyFields.split(","))) {
+            while (docs.hasNext()) {
+                checkWriter(writeFailure);
+                SolrDocument doc = docs.next();
+                window.acquire();
+                try {
+                    workers.execute(() -> {
+                        try {
+                            SolrInputDocument result;
+                            try (Watchdog.Watch watch = watchdog.watch(timeout)) {
+                                result = enrich(doc);
+                            }
+                            results.put(result);
+                            numDone.incrementAndGet();
+                        } catch (InterruptedException e) {
+                            LOG.warn("Interrupted while posting {}", doc.get("id"));
+                        } finally {
+                            window.release();
+                        }
+                    });
+                } catch (RuntimeException e) {
+                    window.release();
+                    throw e;
+                }
+                count++;
+                if (System.currentTimeMillis() - st > 2000) {
+                    LOG.info("Num Docs : {}, Done : {}, Imported {} of {}, Timeouts : {}",
+                            count, numDone.get(), docs.getNextStart(), docs.getNumFound(),
+                            watchdog.getNumTimeouts());
+                    LOG.info("Enrichers : {}", Arrays.toString(stats));
+                    st = System.currentTimeMillis();
+                }
+            }
+            workers.shutdown();
+            workers.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            LOG.info("Num Docs : {}, Timeouts : {}", count, watchdog.getNumTimeouts());
+        } finally {
+            workers.shutdownNow();
+            results.put(END);
+            writer.join();
+        }
+        checkWriter(writeFailure);
+        LOG.info("Enrichers : {}", Arrays.toString(stats));
+        LOG.info("Committing before exit. Num Docs = {}, Failed = {}", count, poster.getNumFailed());
+        UpdateResponse response = dest.commit();
+        LOG.info("Commit response : {}", response);
+        dest.shutdown();
+        source.shutdown();
+    }
+
+    /**
+     * Posts the document, or the last batch when the document is null
+     * @param poster the poster
+     * @param doc the document, null to close the poster
+     * @param failure set when the post fails
+     */
+    private static void post(BatchPoster poster, SolrInputDocument doc,
+                             AtomicReference<RuntimeException> failure) {
+        try {
+            if (doc == null) {
+                poster.close();
+            } else {
+                poster.add(doc);
+            }
+        } catch (RuntimeException e) {
+            LOG.error("Writer failed : " + e.getMessage(), e);
+            failure.set(e);
+        }
+    }
+
+    private static void checkWriter(AtomicReference<RuntimeException> failure) {
+        RuntimeException error = failure.get();
+        if (error != null) {
+            throw new IllegalStateException("Reprocessing stopped : " + error.getMessage(), error);
+        }
+    }
+
+    /**
+     * Copies the source document and runs the enrichers on it. The enrichers are skipped
+     * after the thread is interrupted
+     * @param source the source document
+     * @return the enriched document
+     */
+    private SolrInputDocument enrich(SolrDocument source) {
+        SolrInputDocument target = new SolrInputDocument();
+        StringBuilder sb = new StringBuilder();
+        for (String field : source.getFieldNames()) {
+            target.setField(field, source.get(field)); //copy
+            if (textFieldSet.contains(field)) {
+                sb.append(source.get(field)).append("\n");
+            }
+        }
+        String text = sb.toString();
+        for (int i = 0; i < enrichers.size(); i++) {
+            if (Thread.currentThread().isInterrupted()) {
+                LOG.warn("Timed out {}, skipped {} and after", source.get("id"), stats[i].getName());
+                break;
+            }
+            long st = System.nanoTime();
+            boolean failed = false;
+            try {
+                enrichers.get(i).enrich(source, text, target);
+            } catch (Exception e) {
+                failed = true;
+                LOG.warn("{} failed for {} : {}", stats[i].getName(), source.get("id"), e.getMessage());
+            }
+            stats[i].record(System.nanoTime() - st, failed);
+        }
+        return target;
+    }
+
+    /**
+     * @return time taken by the enrichers
+     */
+    public List<EnricherStats> getStats() {
+        return Arrays.asList(stats);
+    }
+
+    public void setStart(int start) {
+        this.start = start;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public void setNumThreads(int nThreads) {
+        this.nThreads = nThreads;
+    }
+
+    public void setTimeout(int timeout) {
+        this.timeout = timeout;
+    }
+
+    public void setNumSlices(int numSlices) {
+        this.numSlices = numSlices;
+    }
+
+    public void setPrefetch(int prefetch) {
+        this.prefetch = prefetch;
+    }
+
+    public void setCopyFields(String... fields) {
+        this.copyFields = String.join(",", fields);
+    }
+
+    public void setTextFields(String... fields) {
+        this.textFields = String.join(",", fields);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Reprocessor reprocessor = new Reprocessor();
+        CmdLineParser cmdLineParser = new CmdLineParser(reprocessor);
+        try {
+            cmdLineParser.parseArgument(args);
+        } catch (CmdLineException e) {
+            System.err.println(e.getMessage());
+            cmdLineParser.printUsage(System.out);
+            return;
+        }
+        reprocessor.run();
+        System.out.println("Done");
+    }
+}
@@ -1,5 +1,7 @@
 package edu.usc.cs.ir.cwork.solr.schema;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import org.json.simple.JSONObject;
 import org.json.simple.parser.JSONParser;
 import org.json.simple.parser.ParseException;
@@ -27,6 +29,10 @@ public class FieldMapper {
     public static final String KEY_MULTI_VAL_SUFFIX = "multiValSuffix";
     public static final String DEFAULT_MULTI_VAL_SUFFIX = "s";
     public static final String KEY_TYPE_SUFFIX = "typeSuffix";
+    /**
+     * Default max number of mappings remembered, see 'fieldmapper.cache.size' system property
+     */
+    public static final int DEF_CACHE_SIZE = 10000;
 
     private static Map<Class, Class> PRIM_MAP = new HashMap<>();
     static {
@@ -49,16 +55,66 @@ public class FieldMapper {
     private StringEvaluator evaluator = new StringEvaluator();
     private boolean failOnError = true;
 
+    /**
+     * Mappings of (field name, value type, multi valued), which repeat across documents.
+     * Null when caching is disabled
+     */
+    private final Cache<MappingKey, String> cache;
+
+    /**
+     * Key of the mapping cache
+     */
+    private static final class MappingKey {
+        private final String fieldName;
+        private final Class<?> valType;
+        private final boolean multiValued;
+        private final int hash;
+
+        private MappingKey(String fieldName, Class<?> valType, boolean multiValued) {
+            this.fieldName = fieldName;
+            this.valType = valType;
+            this.multiValued = multiValued;
+            this.hash = 31 * (31 * fieldName.hashCode() + valType.hashCode()) + (multiValued ? 1 : 0);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof MappingKey)) {
+                return false;
+            }
+            MappingKey that = (MappingKey) o;
+            return multiValued == that.multiValued && valType == that.valType
+                    && fieldName.equals(that.fieldName);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
     /**
      * Creates a Field name mapper by readin rules from default config file {@code SCHEMA_MAP_FILE} in class loader
      * @throws RuntimeException when config is invalid
      */
     public static FieldMapper create(){
+        return create(Integer.getInteger("fieldmapper.cache.size", DEF_CACHE_SIZE));
+    }
+
+    /**
+     * Creates a Field name mapper by readin rules from default config file {@code SCHEMA_MAP_FILE} in class loader
+     * @param cacheSize max number of mappings remembered, 0 to disable the cache
+     * @throws RuntimeException when config is invalid
+     */
+    public static FieldMapper create(int cacheSize){
         try (InputStream stream = FieldMapper.class.getClassLoader().getResourceAsStream(SCHEMA_MAP_FILE)){
             if (stream == null) {
                 throw new RuntimeException("Couldn't find config file in class path : " + SCHEMA_MAP_FILE);
             }
-            return new FieldMapper(stream);
+            return new FieldMapper(stream, cacheSize);
         } catch (IOException|ParseException e) {
             throw new RuntimeException(e);
         }
@@ -71,6 +127,18 @@ public class FieldMapper {
      * @throws ParseException when the config is invalid
      */
     public FieldMapper(InputStream jConfStream) throws IOException, ParseException {
+        this(jConfStream, DEF_CACHE_SIZE);
+    }
+
+    /**
+     * Creates a field name mapper by reading config from the argument conf stream
+     * @param jConfStream JSON config stream
+     * @param cacheSize max number of mappings remembered, 0 to disable the cache
+     * @throws IOException
+     * @throws ParseException when the config is invalid
+     */
+    public FieldMapper(InputStream jConfStream, int cacheSize) throws IOException, ParseException {
+        this.cache = cacheSize > 0 ? CacheBuilder.newBuilder().maximumSize(cacheSize).build() : null;
         try (InputStreamReader reader = new InputStreamReader(jConfStream)) {
             Map jConf = (JSONObject) new JSONParser().parse(reader);
             if (jConf.containsKey(KEY_OVERRIDES)) {
@@ -125,6 +193,21 @@ public class FieldMapper {
             }
             valType = items.iterator().next().getClass();
         }
+        if (cache == null) {
+            return mapField(fieldName, valType, multiValued);
+        }
+        MappingKey key = new MappingKey(fieldName, valType, multiValued);
+        String mapped = cache.getIfPresent(key);
+        if (mapped == null) {
+            mapped = mapField(fieldName, valType, multiValued);
+            if (mapped != null) {
+                cache.put(key, mapped);
+            }
+        }
+        return mapped;
+    }
+
+    private String mapField(String fieldName, Class<?> valType, boolean multiValued) {
         String suffix = typeSuffix.get(valType);
         if (suffix == null) {
             LOG.warn("{} type is not mapped, field name = {}", valType.getName(), fieldName);
@@ -141,8 +224,51 @@ public class FieldMapper {
         if (fieldName.endsWith(suffix)) {
             return fieldName;
         }
-        fieldName = fieldName.toLowerCase().replaceAll("\\s+", "");
-        return fieldName + suffix;
+        return normalizeName(fieldName) + suffix;
+    }
+
+    /**
+     * Normalizes the field name of a mapping, overridden by the benchmark to compare with
+     * the regex
+     * @param fieldName field name
+     * @return normalized name
+     */
+    String normalizeName(String fieldName) {
+        return normalize(fieldName);
+    }
+
+    /**
+     * Lower cases the field name and removes the white spaces, same as
+     * {@code fieldName.toLowerCase().replaceAll("\\s+", "")} but without regex
+     * @param fieldName field name
+     * @return normalized name
+     */
+    public static String normalize(String fieldName) {
+        int i = 0;
+        int len = fieldName.length();
+        while (i < len && !isSpace(fieldName.charAt(i))) {
+            i++;
+        }
+        if (i < len) {
+            StringBuilder sb = new StringBuilder(len);
+            sb.append(fieldName, 0, i);
+            for (; i < len; i++) {
+                char ch = fieldName.charAt(i);
+                if (!isSpace(ch)) {
+                    sb.append(ch);
+                }
+            }
+            fieldName = sb.toString();
+        }
+        return fieldName.toLowerCase();
+    }
+
+    /**
+     * @param ch character
+     * @return true if it matches regex {@code \s}
+     */
+    private static boolean isSpace(char ch) {
+        return ch == ' ' || ch == '\t' || ch == '\n' || ch == '\u000B' || ch == '\f' || ch == '\r';
     }
 
     /**
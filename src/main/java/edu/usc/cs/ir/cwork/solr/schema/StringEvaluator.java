@@ -3,10 +3,8 @@ package edu.usc.cs.ir.cwork.solr.schema;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.Serializable;
 import java.util.ArrayList;
-import java.util.Collection;
-import java.util.LinkedHashMap;
+import java.util.List;
 
 /**
  *
@@ -16,35 +14,24 @@ public class StringEvaluator {
 
     private static final Logger LOG = LoggerFactory.getLogger(StringEvaluator.class);
 
-    /**
-     * Eval contract for evaluating string to {@code T} type object
-     * @param <T> type
-     */
-    private interface Eval<T extends Serializable> {
-        /**
-         * Evaluate string to a type object
-         * @param s string whose value needs to be evaluated
-         * @return Type object
-         */
-        T eval(String s);
-    }
-
     public static String INT_REGEX = "^[+-]?\\d{1," +
             (("" + Integer.MAX_VALUE).length() -1) +"}$";
 
+    /*
+     * The values are recognised by a scanner, the regexes below are the grammar it implements
+     */
     public static String LONG_REGEX = "^[+-]?\\d{1," +
             (("" + Long.MAX_VALUE).length() - 1) +"}$";
 
     public static String BOOL_REGEX = "(?i)^(true|false)$";
     public static String DOUBLE_REGEX = "^[+-]?\\d+(\\.\\d+)?([Ee][+-]\\d+)?$";
-    private static   LinkedHashMap<String, Eval> evals = new LinkedHashMap<>();
-    static {
-        //regex  -> evaluator
-        //evals.put(INT_REGEX, Integer::parseInt); //Let the long take it
-        evals.put(LONG_REGEX, Long::parseLong);
-        evals.put(BOOL_REGEX, Boolean::parseBoolean);
-        evals.put(DOUBLE_REGEX, Double::parseDouble);
-    }
+
+    private static final int MAX_LONG_DIGITS = ("" + Long.MAX_VALUE).length() - 1;
+
+    /**
+     * Types recognised by the scanner
+     */
+    enum Kind {TEXT, LONG, BOOL, DOUBLE}
 
     /**
      * makes best effort to detect content type. Upon failure,
@@ -54,17 +41,98 @@ public class StringEvaluator {
      */
     public Object valueOf(String s){
         s = s.trim();
-        if (s.isEmpty()) {
-            return s;
+        return valueOf(s, kindOf(s));
+    }
+
+    private static Object valueOf(String s, Kind kind) {
+        switch (kind) {
+            case LONG:
+                return Long.parseLong(s);
+            case BOOL:
+                return (s.charAt(0) | 0x20) == 't';
+            case DOUBLE:
+                return Double.parseDouble(s);
+            default:
+                return s;
         }
+    }
 
-        for (String regex: evals.keySet()) {
-            if (s.matches(regex)) {
-                //System.out.println(regex);
-                return evals.get(regex).eval(s);
+    /**
+     * Finds the type of a trimmed string in a single pass, without regex.
+     * The types are same as matching {@link #LONG_REGEX}, {@link #BOOL_REGEX} and
+     * {@link #DOUBLE_REGEX} in that order
+     * @param s trimmed string
+     * @return the type
+     */
+    static Kind kindOf(String s) {
+        int len = s.length();
+        if (len == 0) {
+            return Kind.TEXT;
+        }
+        char first = s.charAt(0);
+        if (len == 4 || len == 5) {
+            if (isWord(s, "true") || isWord(s, "false")) {
+                return Kind.BOOL;
+            }
+        }
+        int i = (first == '+' || first == '-') ? 1 : 0;
+        int start = i;
+        while (i < len && isDigit(s.charAt(i))) {
+            i++;
+        }
+        int numDigits = i - start;
+        if (numDigits == 0) {
+            return Kind.TEXT;
+        }
+        if (i == len) {
+            return numDigits <= MAX_LONG_DIGITS ? Kind.LONG : Kind.DOUBLE;
+        }
+        if (s.charAt(i) == '.') {
+            start = ++i;
+            while (i < len && isDigit(s.charAt(i))) {
+                i++;
+            }
+            if (i == start) {
+                return Kind.TEXT;
+            }
+            if (i == len) {
+                return Kind.DOUBLE;
+            }
+        }
+        char ch = s.charAt(i);
+        if (ch != 'e' && ch != 'E') {
+            return Kind.TEXT;
+        }
+        i++;
+        if (i == len || (s.charAt(i) != '+' && s.charAt(i) != '-')) {
+            return Kind.TEXT; // the exponent needs a sign
+        }
+        start = ++i;
+        while (i < len && isDigit(s.charAt(i))) {
+            i++;
+        }
+        return i > start && i == len ? Kind.DOUBLE : Kind.TEXT;
+    }
+
+    private static boolean isDigit(char ch) {
+        return ch >= '0' && ch <= '9';
+    }
+
+    /**
+     * @param s string
+     * @param lowerWord word in lower case ascii
+     * @return true if the string is the word, ignoring the case of ascii letters
+     */
+    private static boolean isWord(String s, String lowerWord) {
+        if (s.length() != lowerWord.length()) {
+            return false;
+        }
+        for (int i = 0; i < s.length(); i++) {
+            if ((s.charAt(i) | 0x20) != lowerWord.charAt(i)) {
+                return false;
             }
         }
-        return s;
+        return true;
     }
 
     /**
@@ -96,21 +164,17 @@ public class StringEvaluator {
             if (items.length < 1) {
                 return null;
             }
-            Collection result = new ArrayList<>();
-            Object first = null;
-            int idx = 0;
-            while(idx < items.length && (first = valueOf(items[idx++])) == null);
-            if (first != null) {
-                result.add(first);
-                for (; idx < items.length; idx++) {
-                    Object target = valueOf(items[idx]);
-                    if (target != null) {
-                        if (target.getClass().equals(first.getClass())) {
-                            result.add(target);
-                        } else {
-                            LOG.error("SKIPPED : Found Different types in same array {} {}", first.getClass(), target.getClass());
-                        }
-                    }
+            List<Object> result = new ArrayList<>(items.length);
+            String first = items[0].trim();
+            Kind kind = kindOf(first);
+            result.add(valueOf(first, kind));
+            for (int idx = 1; idx < items.length; idx++) {
+                String item = items[idx].trim();
+                Kind itemKind = kindOf(item);
+                if (itemKind == kind) {
+                    result.add(valueOf(item, itemKind));
+                } else {
+                    LOG.error("SKIPPED : Found Different types in same array {} {}", kind, itemKind);
                 }
             }
             return result;
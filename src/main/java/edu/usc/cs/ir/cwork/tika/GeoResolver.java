@@ -0,0 +1,219 @@
+package edu.usc.cs.ir.cwork.tika;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import edu.usc.cs.ir.cwork.util.DiskLruCache;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.tika.parser.geo.topic.gazetteer.Location;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Resolves location names to gazetteer locations.
+ * The same few location names occur in almost every document, so the results are cached
+ * in memory (LRU), and optionally on disk. The names which are not cached are coalesced
+ * from all the concurrent callers and looked up in a single gazetteer request, which is
+ * sent when the batch is full or when the flush interval elapses.
+ */
+public class GeoResolver implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(GeoResolver.class);
+    private static final Type LOCATIONS_TYPE = new TypeToken<List<Location>>(){}.getType();
+    public static final int DEF_CACHE_SIZE = 100000;
+    public static final long DEF_FLUSH_INTERVAL = 50;
+    public static final int DEF_BATCH_SIZE = 500;
+    public static final long DEF_LOOKUP_TIMEOUT = 60 * 1000;
+
+    /**
+     * The gazetteer service
+     */
+    public interface Gazetteer {
+        /**
+         * Looks up the names
+         * @param names location names
+         * @return map of name to locations
+         * @throws Exception when the lookup fails
+         */
+        Map<String, List<Location>> getLocations(List<String> names) throws Exception;
+    }
+
+    private final Gazetteer gazetteer;
+    private final Cache<String, List<Location>> cache;
+    private final DiskLruCache diskCache;
+    private final int batchSize;
+    private final long lookupTimeout;
+    private final Gson gson = new Gson();
+    private final ScheduledExecutorService flusher;
+    // name -> result, guarded by this
+    private Map<String, CompletableFuture<List<Location>>> pending = new LinkedHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong numBatches = new AtomicLong();
+    private long lastLogTime = System.currentTimeMillis();
+
+    /**
+     * Creates a resolver
+     * @param gazetteer the gazetteer service
+     * @param cacheSize max number of names to be cached in memory
+     * @param diskCache on disk cache, can be null
+     * @param flushInterval max millis a name waits for its batch
+     * @param batchSize max number of names in a gazetteer request
+     * @param lookupTimeout max millis to wait for a gazetteer response
+     */
+    public GeoResolver(Gazetteer gazetteer, int cacheSize, DiskLruCache diskCache,
+                       long flushInterval, int batchSize, long lookupTimeout) {
+        this.gazetteer = gazetteer;
+        this.cache = CacheBuilder.newBuilder().maximumSize(cacheSize).build();
+        this.diskCache = diskCache;
+        this.batchSize = batchSize;
+        this.lookupTimeout = lookupTimeout;
+        this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "geo-batch-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flush, flushInterval, flushInterval,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Resolves the location names
+     * @param names location names
+     * @return map of name to locations. Names which couldn't be resolved are missing
+     */
+    public Map<String, List<Location>> resolve(Collection<String> names) {
+        Map<String, List<Location>> result = new HashMap<>();
+        Map<String, CompletableFuture<List<Location>>> waiting = new HashMap<>();
+        for (String name : names) {
+            List<Location> locations = getCached(name);
+            if (locations != null) {
+                hits.incrementAndGet();
+                result.put(name, locations);
+            } else {
+                waiting.put(name, enqueue(name));
+                misses.incrementAndGet(); // after enqueue, so the miss is pending when counted
+            }
+        }
+        long deadline = System.currentTimeMillis() + lookupTimeout;
+        for (Map.Entry<String, CompletableFuture<List<Location>>> entry : waiting.entrySet()) {
+            try {
+                long wait = Math.max(0, deadline - System.currentTimeMillis());
+                result.put(entry.getKey(), entry.getValue().get(wait, TimeUnit.MILLISECONDS));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                LOG.warn("Couldn't resolve {} : {}", entry.getKey(), e.getMessage());
+            }
+        }
+        return result;
+    }
+
+    private List<Location> getCached(String name) {
+        List<Location> locations = cache.getIfPresent(name);
+        if (locations == null && diskCache != null) {
+            byte[] bytes = diskCache.get(DigestUtils.sha1Hex(name));
+            if (bytes != null) {
+                locations = gson.fromJson(new String(bytes, StandardCharsets.UTF_8), LOCATIONS_TYPE);
+                cache.put(name, locations);
+            }
+        }
+        return locations;
+    }
+
+    private synchronized CompletableFuture<List<Location>> enqueue(String name) {
+        CompletableFuture<List<Location>> future = pending.get(name);
+        if (future == null) {
+            future = new CompletableFuture<>();
+            pending.put(name, future);
+            if (pending.size() >= batchSize) {
+                flusher.execute(this::flush);
+            }
+        }
+        return future;
+    }
+
+    /**
+     * Looks up all the pending names in a single gazetteer request.
+     * Called by the flusher thread, and by tests for flushing at a known time.
+     */
+    void flush() {
+        Map<String, CompletableFuture<List<Location>>> batch;
+        synchronized (this) {
+            if (pending.isEmpty()) {
+                return;
+            }
+            batch = pending;
+            pending = new LinkedHashMap<>();
+        }
+        numBatches.incrementAndGet();
+        if (System.currentTimeMillis() - lastLogTime > 2000) { // only the flusher writes
+            LOG.info("Geo cache : {}", this);
+            lastLogTime = System.currentTimeMillis();
+        }
+        try {
+            Map<String, List<Location>> found = gazetteer.getLocations(new ArrayList<>(batch.keySet()));
+            for (Map.Entry<String, CompletableFuture<List<Location>>> entry : batch.entrySet()) {
+                String name = entry.getKey();
+                List<Location> locations = found == null ? null : found.get(name);
+                if (locations == null) {
+                    locations = Collections.emptyList(); // unknown names are cached too
+                }
+                cache.put(name, locations);
+                if (diskCache != null) {
+                    diskCache.put(DigestUtils.sha1Hex(name),
+                            gson.toJson(locations, LOCATIONS_TYPE).getBytes(StandardCharsets.UTF_8));
+                }
+                entry.getValue().complete(locations);
+            }
+        } catch (Throwable e) {
+            LOG.error("Gazetteer lookup of {} names failed : {}", batch.size(), e.getMessage());
+            for (CompletableFuture<List<Location>> future : batch.values()) {
+                future.completeExceptionally(e);
+            }
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getNumBatches() {
+        return numBatches.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Hits : %d, Misses : %d, Gazetteer requests : %d",
+                getHits(), getMisses(), getNumBatches());
+    }
+
+    @Override
+    public void close() {
+        flusher.shutdown();
+        flush();
+    }
+}
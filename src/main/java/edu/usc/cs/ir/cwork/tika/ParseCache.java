@@ -0,0 +1,140 @@
+package edu.usc.cs.ir.cwork.tika;
+
+import edu.usc.cs.ir.cwork.util.DiskLruCache;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.math3.util.Pair;
+import org.apache.tika.metadata.Metadata;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Caches the parse results, i.e. text content and metadata including the NER fields,
+ * by the digest of raw content. Repeated crawls have lots of byte identical payloads,
+ * such as mirrored pages and the same image at different URLs; those are parsed once.
+ *
+ * The same content gives different results with different tika configs (such as with and
+ * without NER), so the keys also have the digest of config. The parsers of all the configs
+ * share one store per directory, which keeps the size limit of the directory.
+ */
+public class ParseCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ParseCache.class);
+    public static final long DEF_MAX_MB = 1024;
+    private static final Map<String, DiskLruCache> STORES = new ConcurrentHashMap<>();
+
+    private final DiskLruCache cache;
+    private final String configId;
+
+    /**
+     * Creates the cache of a parser config
+     * @param cache the store, which can be shared by the caches of other configs
+     * @param config the tika config, as bytes
+     */
+    public ParseCache(DiskLruCache cache, byte[] config) {
+        this.cache = cache;
+        this.configId = DigestUtils.sha1Hex(config).substring(0, 12);
+    }
+
+    /**
+     * Opens the cache of a parser config. All the caches of a directory share the same store.
+     * @param dir cache directory
+     * @param maxMegaBytes max size of cache on disk, used when the store is opened first
+     * @param config the tika config, as bytes
+     * @return the cache
+     * @throws IOException when the cache directory can't be created
+     */
+    public static ParseCache open(File dir, long maxMegaBytes, byte[] config) throws IOException {
+        try {
+            DiskLruCache store = STORES.computeIfAbsent(dir.getAbsolutePath(), path -> {
+                try {
+                    return new DiskLruCache(dir, maxMegaBytes * 1024 * 1024);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            return new ParseCache(store, config);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Computes the cache key of content
+     * @param content raw content
+     * @return SHA1 hex digest
+     */
+    public static String digest(byte[] content) {
+        return DigestUtils.sha1Hex(content);
+    }
+
+    // content digest first, the store shards the entries by key prefix
+    private String key(String digest) {
+        return digest + "-" + configId;
+    }
+
+    /**
+     * Gets the cached parse result
+     * @param digest digest of content
+     * @return pair of text and metadata, null when not cached
+     */
+    public Pair<String, Metadata> get(String digest) {
+        byte[] bytes = cache.get(key(digest));
+        if (bytes != null) {
+            try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+                String text = ParseWorker.readString(in);
+                return new Pair<>(text, ParseWorker.readMetadata(in));
+            } catch (IOException e) {
+                LOG.warn("Corrupt cache entry {} : {}", digest, e.getMessage());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Stores the parse result
+     * @param digest digest of content
+     * @param text parsed text
+     * @param md parsed metadata
+     */
+    public void put(String digest, String text, Metadata md) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            ParseWorker.writeString(out, text);
+            ParseWorker.writeMetadata(out, md);
+        } catch (IOException e) {
+            // not expected from memory stream
+            throw new RuntimeException(e);
+        }
+        cache.put(key(digest), bytes.toByteArray());
+    }
+
+    public long getHits() {
+        return cache.getHits();
+    }
+
+    public long getMisses() {
+        return cache.getMisses();
+    }
+
+    /**
+     * @return the store, shared by the caches of all configs in the directory
+     */
+    public DiskLruCache getStore() {
+        return cache;
+    }
+
+    @Override
+    public String toString() {
+        return cache.toString();
+    }
+}
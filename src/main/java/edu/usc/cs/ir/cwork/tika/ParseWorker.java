@@ -0,0 +1,151 @@
+package edu.usc.cs.ir.cwork.tika;
+
+import org.apache.commons.math3.util.Pair;
+import org.apache.tika.Tika;
+import org.apache.tika.config.TikaConfig;
+import org.apache.tika.exception.TikaException;
+import org.apache.tika.io.TikaInputStream;
+import org.apache.tika.metadata.Metadata;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Child JVM end of the {@link ParseWorkerPool}.
+ * Reads parse requests from stdin, parses them with tika and writes responses to stdout.
+ * The worker exits when the stdin is closed, i.e. when the parent goes away.
+ *
+ * Request  : metadata hints, content bytes
+ * Response : status byte, followed by text and metadata on success or an error message on failure
+ */
+public class ParseWorker {
+
+    public static final byte STATUS_OK = 0;
+    public static final byte STATUS_FAILED = 1;
+    public static final int OOM_EXIT_CODE = 3;
+
+    public static void main(String[] args) throws IOException, TikaException {
+        if (args.length != 1) {
+            System.err.println("Usage : ParseWorker <tika-config.xml>");
+            System.exit(1);
+        }
+        // stdout is reserved for the protocol, everything else goes to stderr
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(FileDescriptor.out)));
+        System.setOut(System.err);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(System.in));
+
+        Tika tika = new Tika(new TikaConfig(new File(args[0])));
+        while (true) {
+            Pair<byte[], Metadata> request;
+            try {
+                request = readRequest(in);
+            } catch (EOFException e) {
+                break; // parent is gone
+            }
+            Metadata md = request.getSecond();
+            try (TikaInputStream stream = TikaInputStream.get(request.getFirst(), md)) {
+                String text = tika.parseToString(stream, md);
+                out.writeByte(STATUS_OK);
+                writeString(out, text);
+                writeMetadata(out, md);
+            } catch (OutOfMemoryError e) {
+                out.writeByte(STATUS_FAILED);
+                writeString(out, "Worker ran out of memory");
+                out.flush();
+                System.exit(OOM_EXIT_CODE);
+            } catch (Exception e) {
+                out.writeByte(STATUS_FAILED);
+                writeString(out, e.getClass().getName() + " : " + e.getMessage());
+            }
+            out.flush();
+        }
+    }
+
+    public static void writeRequest(DataOutputStream out, byte[] content,
+                                    Metadata hints) throws IOException {
+        writeMetadata(out, hints);
+        out.writeInt(content.length);
+        out.write(content);
+        out.flush();
+    }
+
+    public static Pair<byte[], Metadata> readRequest(DataInputStream in) throws IOException {
+        Metadata hints = readMetadata(in);
+        byte[] content = new byte[in.readInt()];
+        in.readFully(content);
+        return new Pair<>(content, hints);
+    }
+
+    /**
+     * Reads the response of a parse request
+     * @param in stream from worker
+     * @return pair of text and metadata
+     * @throws IOException when the worker is unreachable
+     * @throws TikaException when the worker failed to parse
+     */
+    public static Pair<String, Metadata> readResponse(DataInputStream in)
+            throws IOException, TikaException {
+        byte status = in.readByte();
+        if (status != STATUS_OK) {
+            throw new TikaException("Worker failed : " + readString(in));
+        }
+        String text = readString(in);
+        return new Pair<>(text, readMetadata(in));
+    }
+
+    static void writeMetadata(DataOutputStream out, Metadata md) throws IOException {
+        String[] names = md.names();
+        out.writeInt(names.length);
+        for (String name : names) {
+            writeString(out, name);
+            String[] values = md.getValues(name);
+            out.writeInt(values.length);
+            for (String value : values) {
+                writeString(out, value);
+            }
+        }
+    }
+
+    static Metadata readMetadata(DataInputStream in) throws IOException {
+        Metadata md = new Metadata();
+        int numNames = in.readInt();
+        for (int i = 0; i < numNames; i++) {
+            String name = readString(in);
+            int numValues = in.readInt();
+            for (int j = 0; j < numValues; j++) {
+                md.add(name, readString(in));
+            }
+        }
+        return md;
+    }
+
+    // unlike writeUTF(), these are not limited to 64K
+    static void writeString(DataOutputStream out, String str) throws IOException {
+        if (str == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
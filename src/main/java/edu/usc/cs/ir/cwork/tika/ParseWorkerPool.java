@@ -0,0 +1,204 @@
+package edu.usc.cs.ir.cwork.tika;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.math3.util.Pair;
+import org.apache.tika.exception.TikaException;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.parser.ner.NamedEntityParser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs tika parsers in a pool of supervised child JVMs ({@link ParseWorker}).
+ * Each parse has a hard deadline: a worker which doesn't respond in time is killed
+ * and restarted, so a pathological document can't hold a thread of the parent forever.
+ * Workers have a heap cap and they are also recycled after a fixed number of parses.
+ */
+public class ParseWorkerPool implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ParseWorkerPool.class);
+    public static final long DEF_TIMEOUT = 30 * 1000;
+    public static final String DEF_HEAP = "1g";
+    public static final int DEF_MAX_PARSES = 10000;
+
+    private final List<String> command;
+    private final BlockingQueue<Worker> idle;
+    private final List<Worker> workers;
+    private final long timeout;
+    private final int maxParses;
+    private final ScheduledExecutorService watchdog;
+    private final AtomicLong numStarts = new AtomicLong();
+    private final AtomicLong numTimeouts = new AtomicLong();
+    private final AtomicLong numCrashes = new AtomicLong();
+
+    /**
+     * A child JVM process
+     */
+    private class Worker {
+        private Process process;
+        private DataOutputStream out;
+        private DataInputStream in;
+        private int numParses;
+        private volatile boolean timedOut;
+
+        private void start() throws IOException {
+            ProcessBuilder builder = new ProcessBuilder(command);
+            builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+            process = builder.start();
+            out = new DataOutputStream(new BufferedOutputStream(process.getOutputStream()));
+            in = new DataInputStream(new BufferedInputStream(process.getInputStream()));
+            numParses = 0;
+            long starts = numStarts.incrementAndGet();
+            if (starts > workers.size()) {
+                LOG.info("Restarted a parser worker. Starts : {}, Timeouts : {}, Crashes : {}",
+                        starts, numTimeouts.get(), numCrashes.get());
+            }
+        }
+
+        private boolean isAlive() {
+            return process != null && process.isAlive();
+        }
+
+        private void destroy() {
+            if (process != null) {
+                process.destroyForcibly();
+                process = null;
+            }
+        }
+    }
+
+    /**
+     * Creates a pool of parser workers
+     * @param tikaConfig tika config for workers
+     * @param size number of workers
+     * @param timeout parse deadline in millis
+     * @param heap max heap of a worker JVM, such as '1g'
+     * @param maxParses number of parses after which a worker is recycled
+     * @throws IOException when the config couldn't be stored for workers
+     */
+    public ParseWorkerPool(byte[] tikaConfig, int size, long timeout,
+                           String heap, int maxParses) throws IOException {
+        this.timeout = timeout;
+        this.maxParses = maxParses;
+        File configFile = File.createTempFile("tika-config", ".xml");
+        configFile.deleteOnExit();
+        FileUtils.writeByteArrayToFile(configFile, tikaConfig);
+
+        command = new ArrayList<>();
+        command.add(new File(new File(System.getProperty("java.home"), "bin"), "java").getPath());
+        command.add("-Xmx" + heap);
+        String nerImpls = System.getProperty(NamedEntityParser.SYS_PROP_NER_IMPL);
+        if (nerImpls != null) {
+            command.add("-D" + NamedEntityParser.SYS_PROP_NER_IMPL + "=" + nerImpls);
+        }
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(ParseWorker.class.getName());
+        command.add(configFile.getAbsolutePath());
+
+        workers = new ArrayList<>(size);
+        idle = new ArrayBlockingQueue<>(size);
+        for (int i = 0; i < size; i++) {
+            Worker worker = new Worker();
+            workers.add(worker);
+            idle.add(worker); // started lazily
+        }
+        watchdog = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "parse-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+        LOG.info("Parser worker pool : size={}, timeout={}ms, heap={}", size, timeout, heap);
+    }
+
+    /**
+     * Parses content in one of the child JVMs
+     * @param content content to be parsed
+     * @param hints metadata hints such as resource name
+     * @return pair of text content and metadata
+     * @throws IOException when a worker couldn't be started
+     * @throws TikaException when the parse fails, times out or crashes the worker
+     */
+    public Pair<String, Metadata> parse(byte[] content, Metadata hints)
+            throws IOException, TikaException {
+        Worker worker;
+        try {
+            worker = idle.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TikaException("Interrupted while waiting for a parser worker", e);
+        }
+        boolean healthy = false;
+        try {
+            if (!worker.isAlive()) {
+                worker.destroy();
+                worker.start();
+            }
+            Process process = worker.process;
+            worker.timedOut = false;
+            ScheduledFuture<?> deadline = watchdog.schedule(() -> {
+                worker.timedOut = true;
+                process.destroyForcibly();
+            }, timeout, TimeUnit.MILLISECONDS);
+            try {
+                ParseWorker.writeRequest(worker.out, content, hints);
+                Pair<String, Metadata> result = ParseWorker.readResponse(worker.in);
+                healthy = true;
+                return result;
+            } catch (TikaException e) {
+                healthy = true; // parse failed, but the worker is fine
+                throw e;
+            } catch (IOException e) {
+                if (worker.timedOut) {
+                    numTimeouts.incrementAndGet();
+                    throw new TikaException("Parse didn't complete in " + timeout + "ms");
+                }
+                numCrashes.incrementAndGet();
+                throw new TikaException("Parser worker died : " + e.getMessage(), e);
+            } finally {
+                deadline.cancel(false);
+            }
+        } finally {
+            if (!healthy || worker.timedOut || ++worker.numParses >= maxParses) {
+                worker.destroy();
+            }
+            idle.add(worker);
+        }
+    }
+
+    public long getNumTimeouts() {
+        return numTimeouts.get();
+    }
+
+    public long getNumCrashes() {
+        return numCrashes.get();
+    }
+
+    @Override
+    public void close() {
+        watchdog.shutdownNow();
+        for (Worker worker : workers) {
+            Process process = worker.process;
+            if (process != null) {
+                process.destroyForcibly();
+            }
+        }
+    }
+}
@@ -1,10 +1,13 @@
 package edu.usc.cs.ir.cwork.tika;
 
 import com.esotericsoftware.minlog.Log;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.gson.GsonBuilder;
 import com.joestelmach.natty.DateGroup;
 import edu.usc.cs.ir.cwork.solr.ContentBean;
 import edu.usc.cs.ir.cwork.solr.schema.FieldMapper;
+import edu.usc.cs.ir.cwork.util.DiskLruCache;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.math3.util.Pair;
 import org.apache.hadoop.conf.Configuration;
@@ -48,6 +51,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 
 import static edu.usc.cs.ir.cwork.solr.SolrIndexer.MD_SUFFIX;
@@ -67,23 +71,64 @@ public class Parser {
     public static final String PHASE1_CONF = "tika-config-phase1.xml";
     public static final String PHASE2_CONF = "tika-config-phase2.xml";
     public static final String DEFAULT_CONF = "tika-config.xml";
-    private static final com.joestelmach.natty.Parser NATTY_PARSER =
-            new com.joestelmach.natty.Parser();
+    /**
+     * Natty parser isn't thread safe, so each thread gets its own
+     */
+    private static final ThreadLocal<com.joestelmach.natty.Parser> NATTY_PARSER =
+            ThreadLocal.withInitial(com.joestelmach.natty.Parser::new);
+    /**
+     * Values longer than this are not memoized, such as the whole text of documents
+     */
+    public static final int MAX_MEMO_DATE_LENGTH = 256;
+    /**
+     * Memo of short date strings (such as NER_DATE values) which repeat across documents.
+     * Entries expire, because natty resolves relative dates like 'last week' against now.
+     */
+    private static final Cache<String, List<Date>> DATE_MEMO = CacheBuilder.newBuilder()
+            .maximumSize(Integer.getInteger("parser.date.memo.size", 100000))
+            .expireAfterWrite(1, TimeUnit.HOURS)
+            .build();
     private static Parser PHASE1;
     private static Parser PHASE2;
     private static Parser INSTANCE;
     private Tika tika;
     private GeoGazetteerClient geoClient;
+    private GeoResolver geoResolver;
     private ParseUtil parseUtil;
+    private ParseWorkerPool workerPool;
+    private ParseCache parseCache;
     private FieldMapper mapper = FieldMapper.create();
 
     public Parser(InputStream configStream) {
         try {
-            TikaConfig config = new TikaConfig(configStream);
+            byte[] configBytes = IOUtils.toByteArray(configStream);
+            TikaConfig config = new TikaConfig(new ByteArrayInputStream(configBytes));
             tika = new Tika(config);
+            int forkWorkers = Integer.getInteger("parser.fork.workers", 0);
+            if (forkWorkers > 0) {
+                // parse in child JVMs which can be killed when stuck
+                workerPool = new ParseWorkerPool(configBytes, forkWorkers,
+                        Long.getLong("parser.fork.timeout", ParseWorkerPool.DEF_TIMEOUT),
+                        System.getProperty("parser.fork.heap", ParseWorkerPool.DEF_HEAP),
+                        Integer.getInteger("parser.fork.maxparses", ParseWorkerPool.DEF_MAX_PARSES));
+            }
+            String cacheDir = System.getProperty("parser.cache.dir", null);
+            if (cacheDir != null) {
+                // skip reparsing the content which was parsed earlier with the same config
+                parseCache = ParseCache.open(new File(cacheDir),
+                        Long.getLong("parser.cache.maxmb", ParseCache.DEF_MAX_MB), configBytes);
+            }
             String apiUrl = System.getProperty("gazetter.rest.api", "http://localhost:8765");
             geoClient =  new GeoGazetteerClient(apiUrl);
             LOG.info("Geo API available? {}", geoClient.checkAvail());
+            String geoCacheDir = System.getProperty("gazetter.cache.dir", null);
+            geoResolver = new GeoResolver(geoClient::getLocations,
+                    Integer.getInteger("gazetter.cache.size", GeoResolver.DEF_CACHE_SIZE),
+                    geoCacheDir == null ? null : new DiskLruCache(new File(geoCacheDir),
+                            Long.getLong("gazetter.cache.maxmb", 256L) * 1024 * 1024),
+                    Long.getLong("gazetter.batch.interval", GeoResolver.DEF_FLUSH_INTERVAL),
+                    Integer.getInteger("gazetter.batch.size", GeoResolver.DEF_BATCH_SIZE),
+                    GeoResolver.DEF_LOOKUP_TIMEOUT);
             String nutchHome = System.getProperty("nutch.home", null);
             if (nutchHome != null) {
                 LOG.info("Initializing nutch home from {}", nutchHome);
@@ -175,7 +220,8 @@ public class Parser {
     public Pair<String, Metadata> parse(Content content){
         ByteArrayInputStream stream = new ByteArrayInputStream(content.getContent());
         try {
-            return parse(stream);
+            String digest = parseCache == null ? null : ParseCache.digest(content.getContent());
+            return parse(stream, digest);
         } finally {
             IOUtils.closeQuietly(stream);
         }
@@ -195,9 +241,19 @@ public class Parser {
      * @return pair of text content and metadata
      */
     private Pair<String, Metadata> parse(InputStream stream) {
+        return parse(stream, null);
+    }
+
+    /**
+     * Parses the stream to read text content and metadata
+     * @param stream the stream
+     * @param digest digest of content for looking up the parse cache, null to skip the cache
+     * @return pair of text content and metadata
+     */
+    private Pair<String, Metadata> parse(InputStream stream, String digest) {
         Metadata metadata = new Metadata();
         try {
-            String text = tika.parseToString(stream, metadata);
+            String text = parseToString(stream, metadata, digest);
             return new Pair<>(text, metadata);
         } catch (IOException | TikaException e) {
             LOG.warn(e.getMessage(), e);
@@ -206,6 +262,73 @@ public class Parser {
         return null;
     }
 
+    /**
+     * Parses the stream to text, unless the result is in the parse cache
+     * (see 'parser.cache.dir' system property)
+     * @param stream the stream
+     * @param md metadata, which gets filled by parser
+     * @param digest digest of content, null to skip the cache
+     * @return text content
+     * @throws IOException
+     * @throws TikaException when parse fails or times out
+     */
+    private String parseToString(InputStream stream, Metadata md, String digest)
+            throws IOException, TikaException {
+        if (parseCache == null || digest == null) {
+            return parseToString(stream, md);
+        }
+        Pair<String, Metadata> cached = parseCache.get(digest);
+        if (cached != null) {
+            copyMetadata(cached.getSecond(), md);
+            return cached.getFirst();
+        }
+        String text = parseToString(stream, md);
+        parseCache.put(digest, text, md);
+        return text;
+    }
+
+    /**
+     * Parses the stream to text, either in this JVM or in a forked worker when
+     * the worker pool is enabled (see 'parser.fork.workers' system property)
+     * @param stream the stream
+     * @param md metadata, which gets filled by parser
+     * @return text content
+     * @throws IOException
+     * @throws TikaException when parse fails or times out
+     */
+    private String parseToString(InputStream stream, Metadata md)
+            throws IOException, TikaException {
+        if (workerPool == null) {
+            return tika.parseToString(stream, md);
+        }
+        Pair<String, Metadata> result = workerPool.parse(IOUtils.toByteArray(stream), md);
+        copyMetadata(result.getSecond(), md);
+        return result.getFirst();
+    }
+
+    private static void copyMetadata(Metadata from, Metadata to) {
+        for (String name : from.names()) {
+            to.remove(name);
+            for (String value : from.getValues(name)) {
+                to.add(name, value);
+            }
+        }
+    }
+
+    /**
+     * @return the geo resolver which caches and batches the gazetteer lookups
+     */
+    public GeoResolver getGeoResolver() {
+        return geoResolver;
+    }
+
+    /**
+     * @return the parse cache, null when it is not enabled
+     */
+    public ParseCache getParseCache() {
+        return parseCache;
+    }
+
     /**
      * Parses the URL content
      * @param url
@@ -245,26 +368,44 @@ public class Parser {
             if (value == null) {
                 continue;
             }
-            List<DateGroup> groups = null;
-            synchronized (NATTY_PARSER) {
-                try {
-                    groups = NATTY_PARSER.parse(value);
-                } catch (Exception e) {
-                    Log.debug(e.getMessage());
-                }
+            if (value.length() > MAX_MEMO_DATE_LENGTH) {
+                result.addAll(parseDate(value));
+                continue;
             }
-            if (groups != null) {
-                for (DateGroup group : groups) {
-                    List<Date> dates = group.getDates();
-                    if (dates != null) {
-                        result.addAll(dates);
-                    }
-                }
+            List<Date> dates = DATE_MEMO.getIfPresent(value);
+            if (dates == null) {
+                dates = parseDate(value);
+                DATE_MEMO.put(value, dates);
             }
+            result.addAll(dates);
         }
         return filterDates(result);
     }
 
+    /**
+     * Parses the dates using natty parser of current thread
+     * @param value text having dates
+     * @return dates
+     */
+    private static List<Date> parseDate(String value) {
+        List<Date> result = new ArrayList<>();
+        List<DateGroup> groups = null;
+        try {
+            groups = NATTY_PARSER.get().parse(value);
+        } catch (Exception e) {
+            Log.debug(e.getMessage());
+        }
+        if (groups != null) {
+            for (DateGroup group : groups) {
+                List<Date> dates = group.getDates();
+                if (dates != null) {
+                    result.addAll(dates);
+                }
+            }
+        }
+        return result;
+    }
+
 
     /**
      * Creates Solrj Bean from file
@@ -279,9 +420,11 @@ public class Parser {
         URL url = new URL(content.getBaseUrl());
         String id = urlToPathMapper.apply(url);
         bean.setId(id);
+        String digest = ParseCache.digest(content.getContent());
+        bean.setDigest(digest);
         Metadata md = new Metadata();
         try (TikaInputStream stream = TikaInputStream.get(content.getContent(), md)) {
-            loadContentBean(bean, md, true, stream);
+            loadContentBean(bean, md, true, stream, digest);
         }
         bean.setUrl(content.getUrl());
         loadOutlinks(bean, urlToPathMapper, content);
@@ -295,7 +438,6 @@ public class Parser {
                 }
             }
         }
-        //FIXME : Add SHA1 digest
         return bean;
     }
 
@@ -345,17 +487,17 @@ public class Parser {
         bean.setId(file.toURI().toURL().toExternalForm());
         Metadata md = new Metadata();
         try (TikaInputStream stream = TikaInputStream.get(file.toPath(), md)) {
-            loadContentBean(bean, md, true, stream);
+            loadContentBean(bean, md, true, stream, null);
         }
         return bean;
     }
 
     private void loadContentBean(ContentBean bean, Metadata md,
                                  boolean keepMetaCopy,
-                                 TikaInputStream stream)
+                                 TikaInputStream stream, String digest)
             throws IOException, TikaException {
         Map<String, Object> mdFields = new HashMap<>();
-        String content = tika.parseToString(stream, md);
+        String content = parseToString(stream, md, digest);
         bean.setContent(content);
         try {
             for (String name : md.names()) {
@@ -416,7 +558,7 @@ public class Parser {
             if (bean.getGeoCoords() == null) {
                 bean.setGeoCoords(new HashSet<>());
             }
-            Map<String, List<Location>> locations = geoClient.getLocations(new ArrayList<>(locationNames));
+            Map<String, List<Location>> locations = geoResolver.resolve(locationNames);
 
             for (Map.Entry<String, List<Location>> e1 : locations.entrySet()) {
                 for (Location l : e1.getValue()) {
@@ -0,0 +1,165 @@
+package edu.usc.cs.ir.cwork.util;
+
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A persistent, size bounded cache of byte arrays stored on local disk.
+ * Each entry is a file named after its key, and the least recently used entries are
+ * evicted when the total size exceeds the limit. The entries survive restarts; the
+ * recency order is restored from file modification times.
+ * Keys are used as file names, so they should be safe for that, such as hex digests.
+ */
+public class DiskLruCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DiskLruCache.class);
+
+    private final File dir;
+    private final long maxBytes;
+    // key -> size, in the order of access
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Opens the cache, loading the existing entries from directory
+     * @param dir directory for storing entries, created when missing
+     * @param maxBytes max size of all entries together
+     * @throws IOException when the directory can't be created
+     */
+    public DiskLruCache(File dir, long maxBytes) throws IOException {
+        this.dir = dir;
+        this.maxBytes = maxBytes;
+        FileUtils.forceMkdir(dir);
+        List<File> files = new ArrayList<>();
+        File[] shards = dir.listFiles(File::isDirectory);
+        if (shards != null) {
+            for (File shard : shards) {
+                File[] shardFiles = shard.listFiles(f -> f.isFile() && !f.getName().endsWith(".tmp"));
+                if (shardFiles != null) {
+                    Collections.addAll(files, shardFiles);
+                }
+            }
+        }
+        files.sort((f1, f2) -> Long.compare(f1.lastModified(), f2.lastModified()));
+        for (File file : files) {
+            entries.put(file.getName(), file.length());
+            totalBytes += file.length();
+        }
+        evict();
+        LOG.info("Opened cache at {}. Entries : {}, Size : {} bytes, Max Size : {} bytes",
+                dir, entries.size(), totalBytes, maxBytes);
+    }
+
+    private File getFile(String key) {
+        String shard = key.length() > 2 ? key.substring(0, 2) : "_";
+        return new File(new File(dir, shard), key);
+    }
+
+    /**
+     * Gets the value of key
+     * @param key the key
+     * @return the value or null when it is not cached
+     */
+    public byte[] get(String key) {
+        synchronized (this) {
+            if (entries.get(key) == null) { // also moves the key to the end
+                misses.incrementAndGet();
+                return null;
+            }
+        }
+        File file = getFile(key);
+        try {
+            byte[] value = Files.readAllBytes(file.toPath());
+            file.setLastModified(System.currentTimeMillis());
+            hits.incrementAndGet();
+            return value;
+        } catch (NoSuchFileException e) {
+            // evicted concurrently
+        } catch (IOException e) {
+            LOG.warn("Couldn't read cache entry {} : {}", file, e.getMessage());
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Stores the value, evicting the least recently used entries if needed
+     * @param key the key
+     * @param value the value
+     */
+    public void put(String key, byte[] value) {
+        if (value.length > maxBytes) {
+            return;
+        }
+        File file = getFile(key);
+        File tmp = new File(file.getPath() + "." + Thread.currentThread().getId() + ".tmp");
+        try {
+            FileUtils.writeByteArrayToFile(tmp, value);
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOG.warn("Couldn't write cache entry {} : {}", file, e.getMessage());
+            FileUtils.deleteQuietly(tmp);
+            return;
+        }
+        synchronized (this) {
+            Long old = entries.put(key, (long) value.length);
+            totalBytes += value.length - (old == null ? 0 : old);
+            evict();
+        }
+    }
+
+    private synchronized void evict() {
+        Iterator<Map.Entry<String, Long>> iterator = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && iterator.hasNext()) {
+            Map.Entry<String, Long> eldest = iterator.next();
+            iterator.remove();
+            totalBytes -= eldest.getValue();
+            FileUtils.deleteQuietly(getFile(eldest.getKey()));
+            evictions.incrementAndGet();
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Hits : %d, Misses : %d, Evictions : %d, Entries : %d, Size : %d bytes",
+                getHits(), getMisses(), getEvictions(), size(), getTotalBytes());
+    }
+}
@@ -0,0 +1,260 @@
+package edu.usc.cs.ir.cwork.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Finds all the regular files of a file system tree, like {@link FileIterator}, but lists
+ * the directories in parallel. The sub directories are walked as fork join tasks which
+ * put the files to a bounded queue, and the files are consumed from the queue as they are
+ * found. This helps on network file systems where listing a directory is slow.
+ *
+ * The list of files can be saved to a manifest file, one path per line, so that the next
+ * run reads the manifest instead of walking the tree again. The manifest is written to a
+ * temporary file and renamed when the walk is complete, so a partial manifest is never used.
+ */
+public class ParallelFileWalker implements Iterator<File>, Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ParallelFileWalker.class);
+    private static final File END = new File("");
+    private static final String DIRS_PREFIX = "#dirs ";
+
+    private final BlockingQueue<File> queue;
+    private final AtomicInteger numFiles = new AtomicInteger();
+    private final AtomicInteger numDirs = new AtomicInteger();
+    private final Thread producer;
+    private volatile ForkJoinPool pool;
+    private BufferedWriter manifestWriter;
+    private volatile Throwable error;
+    private File next;
+
+    /**
+     * Walks the tree without manifest
+     * @param root the parent directory
+     * @param numThreads number of threads listing directories
+     */
+    public ParallelFileWalker(File root, int numThreads) {
+        this(root, numThreads, 10 * 1000, null);
+    }
+
+    /**
+     * @param root the parent directory
+     * @param numThreads number of threads listing directories
+     * @param queueSize max number of files found but not consumed
+     * @param manifest file having list of files. It is read when it exists, else it is
+     *                 written after walking the tree. Can be null
+     */
+    public ParallelFileWalker(File root, int numThreads, int queueSize, File manifest) {
+        this.queue = new ArrayBlockingQueue<>(queueSize);
+        Runnable task;
+        if (manifest != null && manifest.exists()) {
+            LOG.info("Reading the files from manifest {}", manifest);
+            task = () -> readManifest(manifest);
+        } else {
+            task = () -> walk(root.toPath(), numThreads, manifest);
+        }
+        this.producer = new Thread(() -> {
+            try {
+                task.run();
+            } catch (Throwable e) {
+                error = e;
+            }
+            try {
+                queue.put(END);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "file-walker");
+        this.producer.setDaemon(true);
+        this.producer.start();
+    }
+
+    private void readManifest(File manifest) {
+        try (BufferedReader reader = Files.newBufferedReader(manifest.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith(DIRS_PREFIX)) {
+                    numDirs.set(Integer.parseInt(line.substring(DIRS_PREFIX.length()).trim()));
+                } else if (!line.isEmpty()) {
+                    numFiles.incrementAndGet();
+                    queue.put(new File(line));
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void walk(Path root, int numThreads, File manifest) {
+        File tmpManifest = null;
+        try {
+            if (manifest != null) {
+                tmpManifest = new File(manifest.getPath() + ".tmp");
+                manifestWriter = Files.newBufferedWriter(tmpManifest.toPath(), StandardCharsets.UTF_8);
+            }
+            pool = new ForkJoinPool(numThreads);
+            if (Files.isDirectory(root)) {
+                pool.invoke(new WalkTask(root));
+            } else if (Files.isRegularFile(root) && Files.isReadable(root)) {
+                found(root);
+            }
+            if (manifestWriter != null) {
+                manifestWriter.write(DIRS_PREFIX + numDirs.get());
+                manifestWriter.newLine();
+                manifestWriter.close();
+                manifestWriter = null;
+                Files.move(tmpManifest.toPath(), manifest.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                LOG.info("Saved the list of {} files to {}", numFiles.get(), manifest);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            if (pool != null) {
+                pool.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Lists a directory, and walks the sub directories in parallel
+     */
+    private class WalkTask extends RecursiveAction {
+
+        private final Path dir;
+
+        private WalkTask(Path dir) {
+            this.dir = dir;
+        }
+
+        @Override
+        protected void compute() {
+            List<WalkTask> subTasks = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+                numDirs.incrementAndGet();
+                for (Path path : stream) {
+                    BasicFileAttributes attrs;
+                    try {
+                        attrs = Files.readAttributes(path, BasicFileAttributes.class);
+                    } catch (IOException e) {
+                        continue; // vanished or not accessible
+                    }
+                    if (attrs.isDirectory()) {
+                        WalkTask task = new WalkTask(path);
+                        task.fork();
+                        subTasks.add(task);
+                    } else if (attrs.isRegularFile() && Files.isReadable(path)) {
+                        found(path);
+                    }
+                }
+            } catch (IOException e) {
+                LOG.warn("Couldn't list {} : {}", dir, e.getMessage());
+            }
+            for (WalkTask task : subTasks) {
+                task.join();
+            }
+        }
+    }
+
+    private void found(Path path) {
+        File file = path.toFile();
+        try {
+            if (manifestWriter != null) {
+                synchronized (this) {
+                    manifestWriter.write(file.getPath());
+                    manifestWriter.newLine();
+                }
+            }
+            queue.put(file);
+            numFiles.incrementAndGet();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while walking " + path, e);
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null) {
+            try {
+                next = queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+            if (next == END) {
+                if (error != null) {
+                    throw new IllegalStateException("Walk failed", error);
+                }
+            }
+        }
+        return next != END;
+    }
+
+    @Override
+    public File next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        File tmp = next;
+        next = null;
+        return tmp;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException("remove not supported");
+    }
+
+    /**
+     * Gets number of files found so far
+     * @return number of files seen
+     */
+    public int getNumFiles() {
+        return numFiles.get();
+    }
+
+    /**
+     * Gets number of directories listed so far
+     * @return number of directories seen
+     */
+    public int getNumDirs() {
+        return numDirs.get();
+    }
+
+    /**
+     * Stops the walk, if it is not complete
+     */
+    @Override
+    public void close() {
+        producer.interrupt();
+        if (pool != null) {
+            pool.shutdownNow();
+        }
+    }
+}
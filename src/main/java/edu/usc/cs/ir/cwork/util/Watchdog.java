@@ -0,0 +1,94 @@
+package edu.usc.cs.ir.cwork.util;
+
+import java.io.Closeable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Interrupts the threads which take longer than their time limit.
+ * A thread starts a watch before the work and closes it after, as in
+ * <pre>
+ *     try (Watchdog.Watch watch = watchdog.watch(timeout)) {
+ *         // work
+ *     }
+ * </pre>
+ * The interrupt, if any, is cleared when the watch is closed, so the thread can be reused.
+ */
+public class Watchdog implements Closeable {
+
+    private final ScheduledExecutorService timer;
+    private final AtomicLong numTimeouts = new AtomicLong();
+
+    public Watchdog() {
+        this.timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Watch of a thread
+     */
+    public class Watch implements Closeable {
+        private final Thread thread;
+        private final ScheduledFuture<?> alarm;
+        private boolean done;
+        private boolean timedOut;
+
+        private Watch(Thread thread, long timeoutMillis) {
+            this.thread = thread;
+            this.alarm = timer.schedule(this::timeout, timeoutMillis, TimeUnit.MILLISECONDS);
+        }
+
+        private synchronized void timeout() {
+            if (!done) {
+                timedOut = true;
+                numTimeouts.incrementAndGet();
+                thread.interrupt();
+            }
+        }
+
+        /**
+         * @return true if the thread was interrupted for timeout
+         */
+        public synchronized boolean isTimedOut() {
+            return timedOut;
+        }
+
+        /**
+         * Stops the watch, and clears the interrupt of timeout
+         */
+        @Override
+        public void close() {
+            alarm.cancel(false);
+            synchronized (this) {
+                done = true;
+                if (timedOut) {
+                    Thread.interrupted();
+                }
+            }
+        }
+    }
+
+    /**
+     * Starts watching the current thread
+     * @param timeoutMillis time limit
+     * @return the watch, which should be closed by the same thread
+     */
+    public Watch watch(long timeoutMillis) {
+        return new Watch(Thread.currentThread(), timeoutMillis);
+    }
+
+    public long getNumTimeouts() {
+        return numTimeouts.get();
+    }
+
+    @Override
+    public void close() {
+        timer.shutdownNow();
+    }
+}
@@ -0,0 +1,66 @@
+package edu.usc.cs.ir.cwork.es;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import edu.usc.cs.ir.cwork.solr.ContentBean;
+import org.junit.Test;
+
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class ESMapperTest {
+
+    private static JsonObject parse(String json) {
+        JsonObject doc = new JsonParser().parse(json).getAsJsonObject();
+        // not written by writeCDRSchema, and the time of mapping
+        doc.remove("obj_id");
+        doc.remove("parsed_at");
+        return doc;
+    }
+
+    private static void assertSameSchema(ContentBean bean) throws Exception {
+        StringWriter written = new StringWriter();
+        ESMapper.writeCDRSchema(bean, written);
+        JsonObject expected = parse(ESMapper.toCDRSchema(bean).toString());
+        JsonObject actual = parse(written.toString());
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    public void testWriteCDRSchema() throws Exception {
+        ContentBean bean = new ContentBean();
+        bean.setId("file:/data2/USCWeaponsStatsGathering/nutch/full_dump/a/b.html");
+        bean.setUrl("http://example.com/z\u00fcrich/\u6771\u4eac.html");
+        bean.setContentType("text/html");
+        bean.setContent("Gr\u00fc\u00dfe aus Z\u00fcrich \u2014 \u6771\u4eac \u2028 \"quoted\"\n\ttabbed");
+        bean.setOutlinks(new LinkedHashSet<>(Arrays.asList("http://a.com/1", "http://b.com/\u00e9")));
+        bean.setOutpaths(new LinkedHashSet<>(Arrays.asList("/x/1", "/y/2")));
+        Map<String, Object> md = new LinkedHashMap<>();
+        md.put("title", "\u00dcn\u00efcode t\u00edtle");
+        md.put("keywords", new String[]{"guns", "ammo", "\u00df"});
+        md.put("authors", Arrays.asList("A", "B"));
+        md.put("pages", 12);
+        bean.setMetadata(md);
+        // raw content is null
+        assertSameSchema(bean);
+    }
+
+    @Test
+    public void testWriteCDRSchemaOfNulls() throws Exception {
+        ContentBean bean = new ContentBean();
+        bean.setId("http://example.com/");
+        assertSameSchema(bean);
+
+        StringWriter written = new StringWriter();
+        ESMapper.writeCDRSchema(bean, written);
+        JsonObject doc = parse(written.toString());
+        assertFalse(doc.has("extracted_text"));
+        assertFalse(doc.has("obj_outlinks"));
+        assertEquals(0, doc.getAsJsonObject("extracted_metadata").entrySet().size());
+    }
+}
@@ -0,0 +1,41 @@
+package edu.usc.cs.ir.cwork.graph;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class CompactGraphTest {
+
+    @Test
+    public void testLoad() throws IOException {
+        File file = File.createTempFile("edges", ".txt");
+        try {
+            Files.write(file.toPath(), Arrays.asList(
+                    "a\tb", "b\ta", "a\tc", "a\tc", "c\tc", "b\tc"), StandardCharsets.UTF_8);
+            CompactGraph graph = CompactGraph.load(file);
+            assertEquals(3, graph.getNumVertices());
+            // duplicate edge and self loop are skipped
+            assertEquals(4, graph.getNumEdges());
+            int a = graph.getIndex("a");
+            int b = graph.getIndex("b");
+            int c = graph.getIndex("c");
+            assertEquals(-1, graph.getIndex("d"));
+            assertEquals("c", graph.getId(c));
+            assertArrayEquals(new int[]{2, 2, 0}, new int[]{
+                    graph.getOutDegrees()[a], graph.getOutDegrees()[b], graph.getOutDegrees()[c]});
+            int[] offsets = graph.getOffsets();
+            int[] incomingOfC = Arrays.copyOfRange(graph.getSources(), offsets[c], offsets[c + 1]);
+            assertArrayEquals(new int[]{a, b}, incomingOfC);
+            assertEquals(1.0 / 3, graph.getScore("a"), 1e-12);
+        } finally {
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package edu.usc.cs.ir.cwork.graph;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class EdgeFileTest {
+
+    @Test
+    public void testConvert() throws IOException {
+        File text = File.createTempFile("edges", ".txt");
+        File binary = File.createTempFile("edges", ".bin");
+        File text2 = File.createTempFile("edges", ".txt");
+        try {
+            List<String> lines = Arrays.asList("file:/a/1.html\tfile:/b/2.html",
+                    "file:/b/2.html\tfile:/a/1.html", "file:/a/1.html\tfile:/c/\u0939.html");
+            Files.write(text.toPath(), lines, StandardCharsets.UTF_8);
+
+            assertEquals(3, EdgeFile.toBinary(text, binary));
+            assertTrue(EdgeFile.isBinary(binary));
+            assertFalse(EdgeFile.isBinary(text));
+
+            EdgeFile.Reader reader = new EdgeFile.Reader(binary);
+            assertEquals(3, reader.getNumVertices());
+            assertEquals(3, reader.getNumEdges());
+            assertEquals("file:/c/\u0939.html", reader.readIds()[2]);
+
+            assertEquals(3, EdgeFile.toText(binary, text2));
+            assertEquals(lines, Files.readAllLines(text2.toPath(), StandardCharsets.UTF_8));
+
+            CompactGraph graph = CompactGraph.load(binary);
+            assertEquals(3, graph.getNumVertices());
+            assertEquals(3, graph.getNumEdges());
+            assertEquals(2, graph.getOutDegrees()[graph.getIndex("file:/a/1.html")]);
+        } finally {
+            text.delete();
+            binary.delete();
+            text2.delete();
+        }
+    }
+}
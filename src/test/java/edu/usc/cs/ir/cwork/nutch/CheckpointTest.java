@@ -0,0 +1,39 @@
+package edu.usc.cs.ir.cwork.nutch;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class CheckpointTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void testSaveAndLoad() throws Exception {
+        File file = new File(tmp.getRoot(), "job.checkpoint");
+        Checkpoint checkpoint = Checkpoint.load(file);
+        assertFalse(checkpoint.isDone("seg1/part-00000/data"));
+        assertEquals(0, checkpoint.getPosition("seg1/part-00000/data"));
+
+        checkpoint.save(new Checkpoint.Mark(Arrays.asList("seg1/part-00000/data"),
+                Collections.singletonMap("seg1/part-00001/data", 1234L)));
+        checkpoint = Checkpoint.load(file);
+        assertTrue(checkpoint.isDone("seg1/part-00000/data"));
+        assertFalse(checkpoint.isDone("seg1/part-00001/data"));
+        assertEquals(1234L, checkpoint.getPosition("seg1/part-00001/data"));
+
+        // parts done earlier stay done
+        checkpoint.save(Checkpoint.endOf(Collections.singletonList("seg1/part-00001/data")));
+        checkpoint = Checkpoint.load(file);
+        assertTrue(checkpoint.isDone("seg1/part-00000/data"));
+        assertTrue(checkpoint.isDone("seg1/part-00001/data"));
+        assertEquals(0, checkpoint.getPosition("seg1/part-00001/data"));
+    }
+}
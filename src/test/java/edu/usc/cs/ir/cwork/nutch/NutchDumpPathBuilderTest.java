@@ -0,0 +1,46 @@
+package edu.usc.cs.ir.cwork.nutch;
+
+import org.junit.Test;
+
+import java.net.URL;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class NutchDumpPathBuilderTest {
+
+    private static final String[] URLS = {
+            "http://www.example.com/",
+            "http://www.example.com/a/b.html?x=1&y=2#top",
+            "https://Sub.Example.COM:8443/path with space",
+            "http://my_host-1.example.org",
+            "http://localhost/",
+            "http://127.0.0.1:8080/index.html",
+            "http://a..b.com/",
+            "http://.a.com/",
+            "http://a.com./",
+            "http://[::1]/x",
+            "http://b\u00fccher.de/",
+            "file:/tmp/x.html",
+    };
+
+    @Test
+    public void testSameAsDumper() throws Exception {
+        for (String dumpDir : new String[]{"/data/full_dump/", "/data/full dump", "relative/dump", "/"}) {
+            NutchDumpPathBuilder builder = new NutchDumpPathBuilder(dumpDir, 0);
+            for (String url : URLS) {
+                URL u = new URL(url);
+                assertEquals(url, NutchDumpPathBuilder.buildPath(dumpDir, u), builder.apply(u));
+            }
+        }
+    }
+
+    @Test
+    public void testCache() throws Exception {
+        NutchDumpPathBuilder builder = new NutchDumpPathBuilder("/data/full_dump", 2);
+        URL url = new URL("http://www.example.com/footer.html");
+        String path = builder.apply(url);
+        assertEquals(NutchDumpPathBuilder.buildPath("/data/full_dump", url), path);
+        assertSame(path, builder.apply(new URL(url.toString())));
+    }
+}
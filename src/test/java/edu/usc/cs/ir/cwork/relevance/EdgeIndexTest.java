@@ -0,0 +1,38 @@
+package edu.usc.cs.ir.cwork.relevance;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+
+public class EdgeIndexTest {
+
+    private static Set<String> edges(int maxDf, int numPartitions) throws IOException {
+        try (EdgeIndex index = new EdgeIndex(maxDf, numPartitions)) {
+            index.add("d1", Arrays.asList("LA", "US"));
+            index.add("d2", Arrays.asList("LA", "NY", "US"));
+            index.add("d3", Arrays.asList("NY", "US"));
+            index.add("d4", Arrays.asList("US", "Paris"));
+            Set<String> edges = new HashSet<>();
+            long count = index.writeEdges((src, dest) -> edges.add(src + "\t" + dest));
+            assertEquals(count, edges.size());
+            return edges;
+        }
+    }
+
+    @Test
+    public void testEdges() throws IOException {
+        Set<String> expected = new HashSet<>(Arrays.asList(
+                "d1\td2", "d2\td1", "d2\td3", "d3\td2"));
+        assertEquals(expected, edges(3, 1));
+        assertEquals(expected, edges(3, 4));
+
+        // "US" is no longer too frequent, every doc is connected to every other doc
+        assertEquals(12, edges(4, 1).size());
+        assertEquals(12, edges(4, 3).size());
+    }
+}
@@ -0,0 +1,48 @@
+package edu.usc.cs.ir.cwork.relevance;
+
+import edu.usc.cs.ir.cwork.graph.CompactGraph;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Measures the time of {@link ParallelPageRanker} against the number of threads,
+ * on a random graph having skewed degrees.
+ *
+ * Usage : PageRankBenchmark [numVertices] [numEdges] [maxThreads]
+ */
+public class PageRankBenchmark {
+
+    private static final int ITERATIONS = 20;
+
+    public static void main(String[] args) {
+        int numVertices = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        int numEdges = args.length > 1 ? Integer.parseInt(args[1]) : 10000000;
+        int maxThreads = args.length > 2 ? Integer.parseInt(args[2])
+                : Runtime.getRuntime().availableProcessors();
+
+        Random random = new Random(42);
+        CompactGraph.Builder builder = new CompactGraph.Builder();
+        for (int i = 0; i < numEdges; i++) {
+            // squaring makes some vertices a lot more popular than others
+            double r = random.nextDouble();
+            builder.addEdge("v" + random.nextInt(numVertices), "v" + (int) (r * r * numVertices));
+        }
+        CompactGraph graph = builder.build();
+        System.out.println("Vertices : " + graph.getNumVertices() + ", Edges : " + graph.getNumEdges());
+
+        System.out.println("Threads\tTime(ms)\tSpeedup");
+        double base = 0;
+        for (int numThreads = 1; numThreads <= maxThreads; numThreads *= 2) {
+            Arrays.fill(graph.getScores(), 1.0 / graph.getNumVertices());
+            ParallelPageRanker ranker = new ParallelPageRanker(numThreads, ITERATIONS, 0.0, 0.85);
+            long st = System.nanoTime();
+            ranker.rank(graph);
+            double millis = (System.nanoTime() - st) / 1e6;
+            if (numThreads == 1) {
+                base = millis;
+            }
+            System.out.printf("%d\t%.1f\t%.2f%n", numThreads, millis, base / millis);
+        }
+    }
+}
@@ -1,9 +1,11 @@
 package edu.usc.cs.ir.cwork.relevance;
 
+import edu.usc.cs.ir.cwork.graph.CompactGraph;
 import edu.usc.cs.ir.cwork.graph.Graph;
 import edu.usc.cs.ir.cwork.graph.Vertex;
 import org.junit.Test;
 
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -39,4 +41,92 @@ public class PageRankerTest {
         ranker.rank(graph, 15, 0.5);
 
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testCompactRank() throws Exception {
+        Vertex v1 = new Vertex("v1", 0.0);
+        Vertex v2 = new Vertex("v2", 0.0);
+        Vertex v3 = new Vertex("v3", 0.0);
+        Vertex v4 = new Vertex("v4", 0.0);
+
+        v1.addUndirectedEdge(v2);
+        v1.addUndirectedEdge(v3);
+        v1.addUndirectedEdge(v4);
+        v2.addUndirectedEdge(v3);
+
+        Set<Vertex> vertices = new HashSet<>();
+        vertices.add(v1);
+        vertices.add(v2);
+        vertices.add(v3);
+        vertices.add(v4);
+
+        Graph graph = new Graph("test", vertices);
+        CompactGraph compact = CompactGraph.fromGraph(graph);
+        assertEquals(4, compact.getNumVertices());
+        assertEquals(8, compact.getNumEdges());
+
+        PageRanker ranker = new PageRanker();
+        ranker.setDebug(false);
+        ranker.rank(graph, 15, 0.5);
+        ranker.rank(compact, 15, 0.5);
+        for (Vertex vertex : vertices) {
+            assertEquals(vertex.getScore(), compact.getScore(vertex.getId()), 1e-12);
+        }
+    }
+
+    @Test
+    public void testParallelRank() throws Exception {
+        Vertex v1 = new Vertex("v1", 0.0);
+        Vertex v2 = new Vertex("v2", 0.0);
+        Vertex v3 = new Vertex("v3", 0.0);
+        Vertex v4 = new Vertex("v4", 0.0);
+        Vertex v5 = new Vertex("v5", 0.0);
+
+        v1.addUndirectedEdge(v2);
+        v1.addUndirectedEdge(v3);
+        v1.addUndirectedEdge(v4);
+        v4.addUndirectedEdge(v5);
+
+        Set<Vertex> vertices = new HashSet<>();
+        vertices.add(v1);
+        vertices.add(v2);
+        vertices.add(v3);
+        vertices.add(v4);
+        vertices.add(v5);
+
+        Graph graph = new Graph("test", vertices);
+        CompactGraph compact = CompactGraph.fromGraph(graph);
+
+        PageRanker ranker = new PageRanker();
+        ranker.setDebug(false);
+        ranker.rank(graph, 15, 0.5);
+        ParallelPageRanker parallelRanker = new ParallelPageRanker(3, 15, 0.0, 0.5);
+        assertEquals(15, parallelRanker.rank(compact));
+        for (Vertex vertex : vertices) {
+            assertEquals(vertex.getScore(), compact.getScore(vertex.getId()), 1e-12);
+        }
+    }
+
+    @Test
+    public void testConvergence() throws Exception {
+        // v4 is dangling
+        CompactGraph.Builder builder = new CompactGraph.Builder();
+        builder.addEdge("v1", "v2");
+        builder.addEdge("v2", "v3");
+        builder.addEdge("v3", "v1");
+        builder.addEdge("v3", "v4");
+        CompactGraph graph = builder.build();
+        Arrays.fill(graph.getScores(), 0.25);
+
+        ParallelPageRanker ranker = new ParallelPageRanker(2, 1000, 1e-10, 0.85);
+        int iterations = ranker.rank(graph);
+        assertTrue(iterations < 1000);
+        assertTrue(ranker.getDelta() < 1e-10);
+        double sum = 0.0;
+        for (double score : graph.getScores()) {
+            sum += score;
+        }
+        assertEquals(1.0, sum, 1e-9);
+        assertTrue(graph.getScore("v3") > graph.getScore("v4"));
+    }
+}
@@ -0,0 +1,48 @@
+package edu.usc.cs.ir.cwork.relevance;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+import org.kohsuke.args4j.CmdLineParser;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class SparkPageRankerTest {
+
+    private static Map<String, Double> rank(File edges, String... args) throws Exception {
+        try (SparkPageRanker ranker = new SparkPageRanker()) {
+            String[] allArgs = Arrays.copyOf(new String[]{"-edges", edges.getPath(),
+                    "-out", "ranks.txt", "-n", "10", "-master", "local[2]"}, 8 + args.length);
+            System.arraycopy(args, 0, allArgs, 8, args.length);
+            new CmdLineParser(ranker).parseArgument(allArgs);
+            ranker.init();
+            return ranker.run().collectAsMap();
+        }
+    }
+
+    @Test
+    public void testHashedRank() throws Exception {
+        File edges = File.createTempFile("edges", ".txt");
+        File checkpoints = Files.createTempDirectory("checkpoints").toFile();
+        try {
+            Files.write(edges.toPath(), Arrays.asList("v1\tv2", "v2\tv1", "v1\tv3", "v3\tv1",
+                    "v1\tv4", "v4\tv1", "v2\tv3", "v3\tv2", "v2\tv3"), StandardCharsets.UTF_8);
+
+            Map<String, Double> expected = rank(edges);
+            Map<String, Double> actual = rank(edges, "-hashed", "-p", "3",
+                    "-checkpoint", "3", "-checkpointdir", checkpoints.getPath());
+            assertEquals(expected.keySet(), actual.keySet());
+            for (Map.Entry<String, Double> entry : expected.entrySet()) {
+                assertEquals(entry.getValue(), actual.get(entry.getKey()), 1e-9);
+            }
+        } finally {
+            edges.delete();
+            FileUtils.deleteDirectory(checkpoints);
+        }
+    }
+}
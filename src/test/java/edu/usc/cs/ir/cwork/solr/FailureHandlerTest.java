@@ -0,0 +1,105 @@
+package edu.usc.cs.ir.cwork.solr;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.SolrServer;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.response.UpdateResponse;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.util.NamedList;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class FailureHandlerTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    /**
+     * Solr which rejects a batch having the bad document
+     */
+    private static class StubSolr extends SolrServer {
+        private final List<Object> posted = new ArrayList<>();
+
+        @Override
+        public UpdateResponse add(Collection<SolrInputDocument> docs)
+                throws SolrServerException, IOException {
+            for (SolrInputDocument doc : docs) {
+                if ("bad".equals(doc.getFieldValue("id"))) {
+                    throw new SolrException(SolrException.ErrorCode.BAD_REQUEST, "bad document");
+                }
+            }
+            for (SolrInputDocument doc : docs) {
+                posted.add(doc.getFieldValue("id"));
+            }
+            return new UpdateResponse();
+        }
+
+        @Override
+        public NamedList<Object> request(SolrRequest request) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void shutdown() {
+        }
+    }
+
+    private static List<SolrInputDocument> makeDocs(int count, int badIndex) {
+        List<SolrInputDocument> docs = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            SolrInputDocument doc = new SolrInputDocument();
+            doc.setField("id", i == badIndex ? "bad" : "doc" + i);
+            docs.add(doc);
+        }
+        return docs;
+    }
+
+    @Test
+    public void testIsolatesBadDocument() throws Exception {
+        StubSolr solr = new StubSolr();
+        FailureHandler handler = new FailureHandler(solr, 2, 1, null);
+        List<SolrInputDocument> docs = makeDocs(16, 5);
+        List<SolrInputDocument> lost = new ArrayList<>();
+
+        long failed = handler.recover(docs, new SolrException(
+                SolrException.ErrorCode.BAD_REQUEST, "bad document"), lost);
+        assertEquals(1, failed);
+        assertEquals(15, solr.posted.size());
+        assertFalse(solr.posted.contains("bad"));
+        assertEquals(0, handler.getNumRetries()); // not transient
+        // 2 requests for each of the 4 halvings from 16 docs to the bad one
+        assertEquals(8, handler.getNumRequests());
+        // no dead letters, so the rejected doc is lost
+        assertEquals(1, lost.size());
+        assertSame(docs.get(5), lost.get(0));
+    }
+
+    @Test
+    public void testWritesDeadLetters() throws Exception {
+        File file = new File(tmp.getRoot(), "deadletters.json");
+        DeadLetters deadLetters = DeadLetters.get(file);
+        FailureHandler handler = new FailureHandler(new StubSolr(), 2, 1, deadLetters);
+        List<SolrInputDocument> lost = new ArrayList<>();
+
+        long failed = handler.recover(makeDocs(10, 9), new SolrException(
+                SolrException.ErrorCode.BAD_REQUEST, "bad document"), lost);
+        assertEquals(1, failed);
+        assertTrue(lost.isEmpty());
+        assertEquals(1, deadLetters.getCount());
+        List<String> lines = FileUtils.readLines(file, StandardCharsets.UTF_8);
+        assertEquals(1, lines.size());
+        assertEquals("bad", DeadLetters.readDoc(lines.get(0)).getFieldValue("id"));
+    }
+}
@@ -0,0 +1,137 @@
+package edu.usc.cs.ir.cwork.solr;
+
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.SolrServer;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.response.QueryResponse;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrDocumentList;
+import org.apache.solr.common.params.SolrParams;
+import org.apache.solr.common.util.NamedList;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Solr of docs having id and title, which answers the queries of all docs, and of id
+ * ranges in the query or filters, such as {@code (*:*) AND id:[a TO b}} and
+ * {@code id:{a TO *]}. The docs are sorted by id.
+ */
+class InMemorySolr extends SolrServer {
+
+    private static final Pattern RANGE = Pattern.compile(
+            SolrDocIterator.ID_FIELD + ":([\\[{])((?:\\\\.|[^\\\\ ])+) TO ((?:\\\\.|[^\\\\ \\]}])+)([\\]}])");
+
+    private final List<String> ids;
+    private final List<SolrQuery> queries = Collections.synchronizedList(new ArrayList<>());
+
+    /**
+     * @param numDocs number of docs, having ids doc000, doc001, ...
+     */
+    InMemorySolr(int numDocs) {
+        ids = new ArrayList<>();
+        for (int i = 0; i < numDocs; i++) {
+            ids.add(String.format("doc%03d", i));
+        }
+    }
+
+    List<String> getIds() {
+        return ids;
+    }
+
+    /**
+     * @return the queries so far, as they were when sent
+     */
+    List<SolrQuery> getQueries() {
+        return queries;
+    }
+
+    @Override
+    public QueryResponse query(SolrParams params) throws SolrServerException {
+        SolrQuery query = (SolrQuery) params;
+        List<String> ranges = new ArrayList<>();
+        ranges.add(query.getQuery());
+        String[] filters = query.getFilterQueries();
+        if (filters != null) {
+            ranges.addAll(Arrays.asList(filters));
+        }
+        SolrQuery copy = new SolrQuery();
+        copy.add(query);
+        queries.add(copy);
+
+        List<String> matches = new ArrayList<>();
+        for (String id : ids) {
+            boolean match = true;
+            for (String range : ranges) {
+                match &= inRange(id, range);
+            }
+            if (match) {
+                matches.add(id);
+            }
+        }
+        int start = query.getStart() == null ? 0 : query.getStart();
+        int rows = query.getRows() == null ? 10 : query.getRows();
+        SolrDocumentList page = new SolrDocumentList();
+        page.setNumFound(matches.size());
+        page.setStart(start);
+        List<String> fields = query.getFields() == null ? null : Arrays.asList(query.getFields().split(","));
+        for (int i = start; i < Math.min(start + rows, matches.size()); i++) {
+            SolrDocument doc = new SolrDocument();
+            if (fields == null || fields.contains(SolrDocIterator.ID_FIELD)) {
+                doc.setField(SolrDocIterator.ID_FIELD, matches.get(i));
+            }
+            if (fields == null || fields.contains("title")) {
+                doc.setField("title", "Title of " + matches.get(i));
+            }
+            page.add(doc);
+        }
+        NamedList<Object> response = new NamedList<>();
+        response.add("response", page);
+        return new QueryResponse(response, this);
+    }
+
+    private static boolean inRange(String id, String query) {
+        Matcher matcher = RANGE.matcher(query);
+        if (!matcher.find()) {
+            return true; // all docs
+        }
+        String lower = unescape(matcher.group(2));
+        String upper = unescape(matcher.group(3));
+        boolean lowerIncluded = "[".equals(matcher.group(1));
+        boolean upperIncluded = "]".equals(matcher.group(4));
+        if (lower != null) {
+            int cmp = id.compareTo(lower);
+            if (cmp < 0 || cmp == 0 && !lowerIncluded) {
+                return false;
+            }
+        }
+        if (upper != null) {
+            int cmp = id.compareTo(upper);
+            if (cmp > 0 || cmp == 0 && !upperIncluded) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the value, or null for the open bound *
+     */
+    private static String unescape(String value) {
+        return "*".equals(value) ? null : value.replaceAll("\\\\(.)", "$1");
+    }
+
+    @Override
+    public NamedList<Object> request(SolrRequest request) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void shutdown() {
+    }
+}
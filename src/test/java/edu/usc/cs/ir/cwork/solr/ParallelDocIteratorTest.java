@@ -0,0 +1,75 @@
+package edu.usc.cs.ir.cwork.solr;
+
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.response.QueryResponse;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.params.SolrParams;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+public class ParallelDocIteratorTest {
+
+    @Test
+    public void testSlicesReturnEveryIdOnce() {
+        InMemorySolr solr = new InMemorySolr(100);
+        List<String> ids = new ArrayList<>();
+        ParallelDocIterator docs = new ParallelDocIterator(solr, "*:*", 0, 7, 4, 2);
+        try {
+            while (docs.hasNext()) {
+                SolrDocument doc = docs.next();
+                ids.add(doc.getFieldValue(SolrDocIterator.ID_FIELD).toString());
+            }
+        } finally {
+            docs.close();
+        }
+        assertEquals(100, ids.size());
+        assertEquals(new HashSet<>(solr.getIds()), new HashSet<>(ids));
+        assertEquals(100, docs.getNumFound());
+        assertEquals(100, docs.getNextStart());
+        // besides the sampling queries, the queries of 4 slices
+        assertEquals(4, solr.getQueries().stream()
+                .map(q -> q.getQuery())
+                .filter(q -> q.contains(" AND "))
+                .map(q -> q.substring(0, q.indexOf(" TO ")))
+                .distinct().count());
+    }
+
+    @Test(timeout = 10000)
+    public void testFailedSliceThrows() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        InMemorySolr solr = new InMemorySolr(100) {
+            @Override
+            public QueryResponse query(SolrParams params) throws SolrServerException {
+                String query = params.get("q");
+                if (query.contains("doc050 TO doc075")) {
+                    throw new SolrServerException("Slice is down");
+                }
+                if (query.contains(" AND ")) {
+                    // the other slices don't end before the failure is seen
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        throw new SolrServerException(e);
+                    }
+                }
+                return super.query(params);
+            }
+        };
+        ParallelDocIterator docs = new ParallelDocIterator(solr, "*:*", 0, 7, 4, 2);
+        try {
+            docs.hasNext();
+            fail("Failure of a slice is not thrown");
+        } catch (RuntimeException e) {
+            assertTrue(e.getCause() instanceof SolrServerException);
+        } finally {
+            release.countDown();
+            docs.close();
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package edu.usc.cs.ir.cwork.solr;
+
+import org.apache.solr.client.solrj.SolrQuery;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SolrDocIteratorTest {
+
+    /**
+     * Reads all the docs, checking the number found after every doc
+     * @return the next start after every page, starting with the first page
+     */
+    private static List<Integer> readAll(SolrDocIterator docs, List<String> ids, long numFound) {
+        List<Integer> nextStarts = new ArrayList<>();
+        nextStarts.add(docs.getNextStart());
+        assertEquals(numFound, docs.getNumFound());
+        while (docs.hasNext()) {
+            ids.add(docs.next().getFieldValue(SolrDocIterator.ID_FIELD).toString());
+            assertEquals(numFound, docs.getNumFound());
+            if (docs.getNextStart() != nextStarts.get(nextStarts.size() - 1)) {
+                nextStarts.add(docs.getNextStart());
+            }
+        }
+        return nextStarts;
+    }
+
+    @Test
+    public void testRangePaging() {
+        InMemorySolr solr = new InMemorySolr(25);
+        List<String> ids = new ArrayList<>();
+        SolrDocIterator docs = new SolrDocIterator(solr, "*:*", 0, 7, true, "title");
+        assertEquals(Arrays.asList(7, 14, 21, 25), readAll(docs, ids, 25));
+        assertEquals(solr.getIds(), ids);
+
+        List<SolrQuery> queries = solr.getQueries();
+        assertEquals(4, queries.size());
+        assertNull(queries.get(0).getFilterQueries());
+        for (int i = 1; i < queries.size(); i++) {
+            // the filter of previous page is replaced
+            assertArrayEquals(new String[]{"{!cache=false}id:{" + ids.get(7 * i - 1) + " TO *]"},
+                    queries.get(i).getFilterQueries());
+            assertEquals(0, (int) queries.get(i).getStart());
+        }
+        for (SolrQuery query : queries) {
+            assertEquals(Arrays.asList("title", "id"), Arrays.asList(query.getFields().split(",")));
+        }
+    }
+
+    @Test
+    public void testRangePagingFromStart() {
+        InMemorySolr solr = new InMemorySolr(25);
+        List<String> ids = new ArrayList<>();
+        SolrDocIterator docs = new SolrDocIterator(solr, "*:*", 3, 7, true, "title");
+        assertEquals(Arrays.asList(10, 17, 24, 25), readAll(docs, ids, 25));
+        assertEquals(solr.getIds().subList(3, 25), ids);
+        assertEquals(3, (int) solr.getQueries().get(0).getStart());
+    }
+
+    @Test
+    public void testProgressSameAsStartPaging() {
+        for (int start : new int[]{0, 3}) {
+            List<String> rangeIds = new ArrayList<>();
+            List<Integer> rangeStarts = readAll(new SolrDocIterator(
+                    new InMemorySolr(25), "*:*", start, 7, true), rangeIds, 25);
+            List<String> ids = new ArrayList<>();
+            List<Integer> starts = readAll(new SolrDocIterator(
+                    new InMemorySolr(25), "*:*", start, 7, false), ids, 25);
+            assertEquals(starts, rangeStarts);
+            assertEquals(ids, rangeIds);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package edu.usc.cs.ir.cwork.solr.schema;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Measures the throughput of {@link FieldMapper#mapFields(Map, boolean)} with the field
+ * names normalized by regex as before {@link FieldMapper#normalize(String)}, and without
+ * regex with and without the mapping cache. The documents have the metadata keys of images,
+ * which are the same across documents.
+ *
+ * Usage : FieldMapperBenchmark [numDocs] [numKeys]
+ */
+public class FieldMapperBenchmark {
+
+    private static Map<String, Object> makeDoc(int numKeys, int docNum) {
+        Map<String, Object> doc = new HashMap<>();
+        for (int i = 0; i < numKeys; i++) {
+            switch (i % 4) {
+                case 0:
+                    doc.put(String.format("Unknown tag (0x%04x)", i), "value " + docNum);
+                    break;
+                case 1:
+                    doc.put("Exif IFD0:Tag Number " + i, docNum);
+                    break;
+                case 2:
+                    doc.put("tiff:Image Length " + i, new String[]{"a", "b"});
+                    break;
+                default:
+                    doc.put("X-Parsed-By " + i + "_t", "value");
+            }
+        }
+        return doc;
+    }
+
+    private static double run(FieldMapper mapper, List<Map<String, Object>> docs) {
+        long st = System.nanoTime();
+        long numKeys = 0;
+        for (Map<String, Object> doc : docs) {
+            numKeys += mapper.mapFields(doc, false).size();
+        }
+        double seconds = (System.nanoTime() - st) / 1e9;
+        return numKeys / seconds;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int numDocs = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        int numKeys = args.length > 1 ? Integer.parseInt(args[1]) : 150;
+        List<Map<String, Object>> docs = new ArrayList<>(numDocs);
+        for (int i = 0; i < numDocs; i++) {
+            docs.add(makeDoc(numKeys, i));
+        }
+        FieldMapper regex;
+        try (InputStream stream = FieldMapper.class.getClassLoader()
+                .getResourceAsStream(FieldMapper.SCHEMA_MAP_FILE)) {
+            regex = new FieldMapper(stream, 0) {
+                @Override
+                String normalizeName(String fieldName) {
+                    return fieldName.toLowerCase().replaceAll("\\s+", "");
+                }
+            };
+        }
+        FieldMapper uncached = FieldMapper.create(0);
+        FieldMapper cached = FieldMapper.create(FieldMapper.DEF_CACHE_SIZE);
+        for (int i = 0; i < 3; i++) { // warm up
+            run(regex, docs.subList(0, Math.min(1000, numDocs)));
+            run(uncached, docs.subList(0, Math.min(1000, numDocs)));
+            run(cached, docs.subList(0, Math.min(1000, numDocs)));
+        }
+        System.out.println("Round\tRegex(keys/s)\tUncached(keys/s)\tCached(keys/s)");
+        for (int round = 1; round <= 3; round++) {
+            double before = run(regex, docs);
+            double slow = run(uncached, docs);
+            double fast = run(cached, docs);
+            System.out.printf("%d\t%.0f\t%.0f\t%.0f%n", round, before, slow, fast);
+        }
+    }
+}
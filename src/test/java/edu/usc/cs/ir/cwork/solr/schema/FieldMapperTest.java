@@ -35,4 +35,31 @@ public class FieldMapperTest {
         assertEquals("b_is", mapper.mapField("b", new int[]{10, 20}));
         assertEquals("b_is", mapper.mapField("b", new HashSet<>(Arrays.asList(10, 20))));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testNormalize() throws Exception {
+        String[] names = {"abc", "Exif Version", " Unknown tag (0x0001) ", "a\tb\nc\u000Bd\fe\rf", "", "   "};
+        for (String name : names) {
+            assertEquals(name.toLowerCase().replaceAll("\\s+", ""), FieldMapper.normalize(name));
+        }
+    }
+
+    @Test
+    public void testCachedMapping() throws Exception {
+        FieldMapper cached = FieldMapper.create(100);
+        FieldMapper uncached = FieldMapper.create(0);
+        Object[] values = {"xxxx", 10, new int[]{10, 20}, Arrays.asList("a", "b"), 10.1};
+        for (int round = 0; round < 2; round++) {
+            for (Object value : values) {
+                for (String name : Arrays.asList("Unknown tag (0x0001)", "x_t", "Exif Version", "id")) {
+                    assertEquals(uncached.mapField(name, value), cached.mapField(name, value));
+                }
+            }
+        }
+        assertEquals("unknowntag(0x0001)_t", cached.mapField("Unknown tag (0x0001)", "xxxx"));
+        // same name, different type
+        assertEquals("unknowntag(0x0001)_i", cached.mapField("Unknown tag (0x0001)", 10));
+        assertEquals("unknowntag(0x0001)_is", cached.mapField("Unknown tag (0x0001)", new int[]{10}));
+        assertNull(cached.mapField("x", new HashSet<>()));
+    }
+}
@@ -0,0 +1,99 @@
+package edu.usc.cs.ir.cwork.solr.schema;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Measures the throughput of {@link StringEvaluator#valueOf(String)} against the regex
+ * matching it replaced. The values are made up for the field types in data/types.json,
+ * so the mix of types is the same as in the image metadata.
+ *
+ * Usage : StringEvaluatorBenchmark [types.json] [numValues]
+ */
+public class StringEvaluatorBenchmark {
+
+    private static final Pattern ENTRY = Pattern.compile("\"([^\"]+)\"\\s*:\\s*\"([^\"]+)\"");
+
+    private static List<String> makeValues(File typesFile, int count) throws Exception {
+        Map<String, String> types = new LinkedHashMap<>();
+        Matcher matcher = ENTRY.matcher(new String(Files.readAllBytes(typesFile.toPath()),
+                StandardCharsets.UTF_8));
+        while (matcher.find()) {
+            types.put(matcher.group(1), matcher.group(2));
+        }
+        List<String> typeList = new ArrayList<>(types.values());
+        Random random = new Random(1);
+        List<String> values = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            switch (typeList.get(i % typeList.size())) {
+                case "long":
+                    values.add(Long.toString(random.nextInt(100000)));
+                    break;
+                case "double":
+                    values.add(Double.toString(random.nextDouble() * 1000));
+                    break;
+                case "boolean":
+                    values.add(random.nextBoolean() ? "True" : "false");
+                    break;
+                case "date":
+                    values.add("2015:10:" + (10 + random.nextInt(18)) + " 12:30:00");
+                    break;
+                default:
+                    values.add("Canon EOS " + random.nextInt(1000) + "D");
+            }
+        }
+        return values;
+    }
+
+    /**
+     * The regex chain of the previous implementation
+     */
+    private static Object regexValueOf(String s) {
+        s = s.trim();
+        if (s.isEmpty()) {
+            return s;
+        }
+        if (s.matches(StringEvaluator.LONG_REGEX)) {
+            return Long.parseLong(s);
+        } else if (s.matches(StringEvaluator.BOOL_REGEX)) {
+            return Boolean.parseBoolean(s);
+        } else if (s.matches(StringEvaluator.DOUBLE_REGEX)) {
+            return Double.parseDouble(s);
+        }
+        return s;
+    }
+
+    public static void main(String[] args) throws Exception {
+        File typesFile = new File(args.length > 0 ? args[0] : "data/types.json");
+        int numValues = args.length > 1 ? Integer.parseInt(args[1]) : 1000000;
+        List<String> values = makeValues(typesFile, numValues);
+        StringEvaluator evaluator = new StringEvaluator();
+        for (String value : values) {
+            if (!regexValueOf(value).equals(evaluator.valueOf(value))) {
+                throw new IllegalStateException("Mismatch for " + value);
+            }
+        }
+        System.out.println("Round\tRegex(values/s)\tScanner(values/s)");
+        for (int round = 1; round <= 3; round++) {
+            long st = System.nanoTime();
+            for (String value : values) {
+                regexValueOf(value);
+            }
+            double regex = values.size() / ((System.nanoTime() - st) / 1e9);
+            st = System.nanoTime();
+            for (String value : values) {
+                evaluator.valueOf(value);
+            }
+            double scanner = values.size() / ((System.nanoTime() - st) / 1e9);
+            System.out.printf("%d\t%.0f\t%.0f%n", round, regex, scanner);
+        }
+    }
+}
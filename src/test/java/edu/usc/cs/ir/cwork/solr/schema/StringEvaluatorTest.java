@@ -55,4 +55,27 @@ public class StringEvaluatorTest {
         assertEquals(1.1, valuator.eval("1.1"));
         assertEquals(true, valuator.eval("true"));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testSameAsRegex() throws Exception {
+        String[] values = {"", "1", "-1", "+", "-", "+0", "123456789012345678", "1234567890123456789",
+                "1.", ".5", "1.5", "-1.5e+10", "1.5e10", "1e-5", "1E+5", "1e+", "1.5x", "x1", "1 2",
+                "tru", "true", "TrUe", "falsE", "falsey", "\u017Ftrue", "fal\u017Fe", "\u0661\u0662",
+                "0x10", "1,000", "2015-10-28", "NaN", "Infinity", "abc"};
+        for (String value : values) {
+            StringEvaluator.Kind expected = value.matches(StringEvaluator.LONG_REGEX) ? StringEvaluator.Kind.LONG
+                    : value.matches(StringEvaluator.BOOL_REGEX) ? StringEvaluator.Kind.BOOL
+                    : value.matches(StringEvaluator.DOUBLE_REGEX) ? StringEvaluator.Kind.DOUBLE
+                    : StringEvaluator.Kind.TEXT;
+            assertEquals(value, expected, StringEvaluator.kindOf(value));
+        }
+    }
+
+    @Test
+    public void testEvalMixedArray() throws Exception {
+        StringEvaluator valuator = new StringEvaluator();
+        assertEquals(Arrays.asList(1L, 3L), valuator.eval(new String[]{" 1", "x", "3 ", "1.5"}));
+        assertEquals(Arrays.asList("x", "y"), valuator.eval(new String[]{"x", "1", " y "}));
+        assertEquals(null, valuator.eval(new String[]{}));
+    }
+}
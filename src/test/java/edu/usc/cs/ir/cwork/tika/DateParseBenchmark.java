@@ -0,0 +1,64 @@
+package edu.usc.cs.ir.cwork.tika;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Measures the throughput of {@link Parser#parseDates(String...)} against the number of threads.
+ * Each round parses distinct date strings (cold), and then the same strings again (memoized).
+ *
+ * Usage : DateParseBenchmark [numValues] [maxThreads]
+ */
+public class DateParseBenchmark {
+
+    private static final String[] MONTHS = {"January", "February", "March", "April", "May",
+            "June", "July", "August", "September", "October", "November", "December"};
+
+    private static List<String> makeValues(int count, int round) {
+        List<String> values = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            // distinct across rounds, so every round starts cold
+            int year = 1900 + (round * count + i) / (12 * 28) % 100;
+            values.add(MONTHS[i % 12] + " " + (1 + i / 12 % 28) + ", " + year);
+        }
+        return values;
+    }
+
+    private static double run(List<String> values, int numThreads) throws Exception {
+        ExecutorService threads = Executors.newFixedThreadPool(numThreads);
+        List<Future<?>> futures = new ArrayList<>();
+        long st = System.nanoTime();
+        for (int t = 0; t < numThreads; t++) {
+            final int offset = t;
+            futures.add(threads.submit(() -> {
+                for (int i = offset; i < values.size(); i += numThreads) {
+                    Parser.parseDates(values.get(i));
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        double seconds = (System.nanoTime() - st) / 1e9;
+        threads.shutdown();
+        return values.size() / seconds;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int numValues = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+        int maxThreads = args.length > 1 ? Integer.parseInt(args[1])
+                : Runtime.getRuntime().availableProcessors();
+        run(makeValues(500, 99), 1); // warm up
+        System.out.println("Threads\tCold(values/s)\tMemoized(values/s)");
+        int round = 0;
+        for (int numThreads = 1; numThreads <= maxThreads; numThreads *= 2) {
+            List<String> values = makeValues(numValues, round++);
+            double cold = run(values, numThreads);
+            double memoized = run(values, numThreads);
+            System.out.printf("%d\t%.1f\t%.1f%n", numThreads, cold, memoized);
+        }
+    }
+}
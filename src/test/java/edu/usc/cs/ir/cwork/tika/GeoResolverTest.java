@@ -0,0 +1,67 @@
+package edu.usc.cs.ir.cwork.tika;
+
+import org.apache.tika.parser.geo.topic.gazetteer.Location;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+public class GeoResolverTest {
+
+    @Test
+    public void testBatchingAndCaching() throws Exception {
+        List<List<String>> requests = Collections.synchronizedList(new ArrayList<>());
+        GeoResolver.Gazetteer stub = names -> {
+            requests.add(names);
+            Map<String, List<Location>> result = new HashMap<>();
+            for (String name : names) {
+                if (!name.startsWith("Unknown")) {
+                    Location location = new Location();
+                    location.setName(name);
+                    result.put(name, Collections.singletonList(location));
+                }
+            }
+            return result;
+        };
+        // the timer doesn't flush during the test, the batch is flushed after all the lookups
+        GeoResolver resolver = new GeoResolver(stub, 100, null, 60 * 60 * 1000, 100, 10000);
+        ExecutorService threads = Executors.newFixedThreadPool(4);
+        List<Future<Map<String, List<Location>>>> futures = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            futures.add(threads.submit(() -> resolver.resolve(
+                    Arrays.asList("Texas", "Los Angeles", "Unknown Place"))));
+        }
+        long deadline = System.currentTimeMillis() + 10000;
+        while (resolver.getMisses() < 12 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(12, resolver.getMisses());
+        resolver.flush();
+        for (Future<Map<String, List<Location>>> future : futures) {
+            Map<String, List<Location>> result = future.get();
+            assertEquals("Texas", result.get("Texas").get(0).getName());
+            assertEquals(1, result.get("Los Angeles").size());
+            assertTrue(result.get("Unknown Place").isEmpty());
+        }
+        threads.shutdown();
+        // concurrent lookups of the same names are coalesced into one request
+        assertEquals(1, requests.size());
+        assertEquals(3, requests.get(0).size());
+
+        // cached now, including the unknown name
+        Map<String, List<Location>> result = resolver.resolve(Arrays.asList("Texas", "Unknown Place"));
+        assertEquals(2, result.size());
+        assertEquals(1, requests.size());
+        assertEquals(2, resolver.getHits());
+        resolver.close();
+    }
+}
@@ -0,0 +1,50 @@
+package edu.usc.cs.ir.cwork.tika;
+
+import org.apache.commons.math3.util.Pair;
+import org.apache.tika.metadata.Metadata;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class ParseCacheTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void testConfigsOfSameContent() throws Exception {
+        byte[] phase1 = "<properties><parsers/></properties>".getBytes(StandardCharsets.UTF_8);
+        byte[] phase2 = "<properties><parsers><ner/></parsers></properties>".getBytes(StandardCharsets.UTF_8);
+        ParseCache noNer = ParseCache.open(tmp.getRoot(), 1, phase1);
+        ParseCache ner = ParseCache.open(tmp.getRoot(), 1, phase2);
+        assertSame(noNer.getStore(), ner.getStore());
+
+        String digest = ParseCache.digest("<html>Obama in Paris</html>".getBytes(StandardCharsets.UTF_8));
+        Metadata md = new Metadata();
+        md.set("Content-Type", "text/html");
+        noNer.put(digest, "Obama in Paris", md);
+        // the result without NER isn't returned to the NER parser
+        assertNull(ner.get(digest));
+
+        Metadata nerMd = new Metadata();
+        nerMd.set("Content-Type", "text/html");
+        nerMd.add("NER_PERSON", "Obama");
+        nerMd.add("NER_LOCATION", "Paris");
+        ner.put(digest, "Obama in Paris", nerMd);
+
+        Pair<String, Metadata> cached = ner.get(digest);
+        assertEquals("Obama in Paris", cached.getFirst());
+        assertEquals("Obama", cached.getSecond().get("NER_PERSON"));
+        cached = noNer.get(digest);
+        assertEquals("Obama in Paris", cached.getFirst());
+        assertNull(cached.getSecond().get("NER_PERSON"));
+
+        // the config of same bytes finds the results, and both configs are in one store
+        assertNotNull(ParseCache.open(tmp.getRoot(), 1, phase1.clone()).get(digest));
+        assertEquals(2, ner.getStore().size());
+    }
+}
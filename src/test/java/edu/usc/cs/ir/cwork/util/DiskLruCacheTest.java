@@ -0,0 +1,36 @@
+package edu.usc.cs.ir.cwork.util;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+public class DiskLruCacheTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void testEvictionAndReload() throws Exception {
+        DiskLruCache cache = new DiskLruCache(tmp.getRoot(), 10);
+        cache.put("aaaa", new byte[]{1, 2, 3, 4});
+        cache.put("bbbb", new byte[]{5, 6, 7, 8});
+        assertArrayEquals(new byte[]{1, 2, 3, 4}, cache.get("aaaa")); // aaaa is recent now
+        assertNull(cache.get("cccc"));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+
+        cache.put("cccc", new byte[]{9, 10, 11, 12});
+        assertNull(cache.get("bbbb")); // least recently used
+        assertNotNull(cache.get("aaaa"));
+        assertNotNull(cache.get("cccc"));
+        assertEquals(8, cache.getTotalBytes());
+        assertEquals(1, cache.getEvictions());
+
+        // entries survive reopening
+        cache = new DiskLruCache(tmp.getRoot(), 10);
+        assertEquals(2, cache.size());
+        assertArrayEquals(new byte[]{9, 10, 11, 12}, cache.get("cccc"));
+    }
+}
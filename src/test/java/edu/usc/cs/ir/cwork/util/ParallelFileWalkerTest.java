@@ -0,0 +1,74 @@
+package edu.usc.cs.ir.cwork.util;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class ParallelFileWalkerTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private File makeTree() throws Exception {
+        File root = tmp.newFolder("dump");
+        for (int i = 0; i < 5; i++) {
+            File dir = new File(root, "d" + i + "/e" + (i % 2));
+            assertTrue(dir.mkdirs());
+            for (int j = 0; j < 20; j++) {
+                FileUtils.writeStringToFile(new File(dir, "f" + j), "doc " + i + j);
+            }
+        }
+        FileUtils.writeStringToFile(new File(root, "top.html"), "top");
+        assertTrue(new File(root, "empty").mkdir());
+        return root;
+    }
+
+    private static Set<File> consume(ParallelFileWalker walker) {
+        Set<File> files = new HashSet<>();
+        while (walker.hasNext()) {
+            assertTrue(files.add(walker.next()));
+        }
+        return files;
+    }
+
+    @Test
+    public void testWalk() throws Exception {
+        File root = makeTree();
+        Set<File> expected = new HashSet<>();
+        FileIterator iterator = new FileIterator(root);
+        while (iterator.hasNext()) {
+            expected.add(iterator.next());
+        }
+        try (ParallelFileWalker walker = new ParallelFileWalker(root, 4, 3, null)) {
+            assertEquals(expected, consume(walker));
+            assertEquals(101, walker.getNumFiles());
+            assertEquals(iterator.getNumDirs(), walker.getNumDirs());
+            assertFalse(walker.hasNext());
+        }
+    }
+
+    @Test
+    public void testManifest() throws Exception {
+        File root = makeTree();
+        File manifest = new File(tmp.getRoot(), "manifest.txt");
+        Set<File> walked;
+        try (ParallelFileWalker walker = new ParallelFileWalker(root, 2, 10, manifest)) {
+            walked = consume(walker);
+        }
+        assertTrue(manifest.exists());
+
+        FileUtils.deleteDirectory(root); // the next run shouldn't walk
+        try (ParallelFileWalker walker = new ParallelFileWalker(root, 2, 10, manifest)) {
+            assertEquals(walked, consume(walker));
+            assertEquals(101, walker.getNumFiles());
+            assertEquals(12, walker.getNumDirs());
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package edu.usc.cs.ir.cwork.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class WatchdogTest {
+
+    @Test
+    public void testTimeout() throws Exception {
+        try (Watchdog watchdog = new Watchdog()) {
+            boolean interrupted = false;
+            Watchdog.Watch watch = watchdog.watch(50);
+            try {
+                Thread.sleep(5000);
+            } catch (InterruptedException e) {
+                interrupted = true;
+            } finally {
+                watch.close();
+            }
+            assertTrue(interrupted);
+            assertTrue(watch.isTimedOut());
+            assertEquals(1, watchdog.getNumTimeouts());
+            // the thread is usable again
+            assertFalse(Thread.currentThread().isInterrupted());
+        }
+    }
+
+    @Test
+    public void testNoTimeout() throws Exception {
+        try (Watchdog watchdog = new Watchdog()) {
+            Watchdog.Watch watch = watchdog.watch(5000);
+            watch.close();
+            Thread.sleep(50);
+            assertFalse(watch.isTimedOut());
+            assertEquals(0, watchdog.getNumTimeouts());
+            assertFalse(Thread.currentThread().isInterrupted());
+        }
+    }
+}